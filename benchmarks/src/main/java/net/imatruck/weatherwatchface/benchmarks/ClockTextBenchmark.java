@@ -0,0 +1,65 @@
+package net.imatruck.weatherwatchface.benchmarks;
+
+import net.imatruck.weatherwatchface.lib.ClockText;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text of the time and date for one frame, filled into {@link ClockText}'s buffers against
+ * building strings with String.format, which is what the face did per frame before. Every
+ * operation moves on by a minute, so the digits change like they do on the watch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClockTextBenchmark {
+
+    private ClockText mClockText;
+    private int mMinuteOfWeek;
+
+    @Setup
+    public void createClockText() {
+        mClockText = new ClockText(Locale.US);
+    }
+
+    @Benchmark
+    public void clockText(Blackhole blackhole) {
+        int minute = nextMinute();
+        mClockText.setTime(minute / 60 % 24, minute % 60);
+        mClockText.setDate(minute / 1440, minute / 1440 + 1, 0);
+        blackhole.consume(mClockText.getHour());
+        blackhole.consume(mClockText.getMinute());
+        blackhole.consume(mClockText.getWeekDay());
+        blackhole.consume(mClockText.getMonthDay());
+        blackhole.consume(mClockText.getMonth());
+    }
+
+    @Benchmark
+    public void stringFormat(Blackhole blackhole) {
+        int minute = nextMinute();
+        blackhole.consume(String.format(Locale.US, "%02d", minute / 60 % 24));
+        blackhole.consume(String.format(Locale.US, "%02d", minute % 60));
+        blackhole.consume(String.format(Locale.US, "%02d", minute / 1440 + 1));
+    }
+
+    private int nextMinute() {
+        mMinuteOfWeek = (mMinuteOfWeek + 1) % (7 * 1440);
+        return mMinuteOfWeek;
+    }
+}
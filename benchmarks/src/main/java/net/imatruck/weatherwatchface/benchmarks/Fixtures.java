@@ -0,0 +1,30 @@
+package net.imatruck.weatherwatchface.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+final class Fixtures {
+
+    private Fixtures() {}
+
+    static String read(String resource) throws IOException {
+        InputStream stream = Fixtures.class.getResourceAsStream(resource);
+        if (stream == null) {
+            throw new IOException("Missing fixture " + resource);
+        }
+        Reader reader = new InputStreamReader(stream, "UTF-8");
+        try {
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                builder.append(buffer, 0, read);
+            }
+            return builder.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
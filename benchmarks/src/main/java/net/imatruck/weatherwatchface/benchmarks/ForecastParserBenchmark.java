@@ -0,0 +1,62 @@
+package net.imatruck.weatherwatchface.benchmarks;
+
+import com.eclipsesource.json.JsonObject;
+
+import net.imatruck.weatherwatchface.lib.ForecastResponseParser;
+import net.imatruck.weatherwatchface.lib.WeatherCondition;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming parse of recorded Forecast.io responses against building the whole
+ * minimal-json tree, which is what ForecastIOLib did.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastParserBenchmark {
+
+    @Param({"forecast_full.json", "forecast_excluded.json"})
+    public String fixture;
+
+    private String mResponse;
+
+    @Setup
+    public void loadFixture() throws IOException {
+        mResponse = Fixtures.read("/forecast/" + fixture);
+    }
+
+    @Benchmark
+    public WeatherSnapshot streaming() throws IOException {
+        return ForecastResponseParser.parse(new StringReader(mResponse));
+    }
+
+    @Benchmark
+    public WeatherSnapshot tree() {
+        JsonObject response = JsonObject.readFrom(mResponse);
+        JsonObject currently = response.get("currently").asObject();
+        JsonObject daily = response.get("daily").asObject().get("data").asArray().get(0).asObject();
+        return new WeatherSnapshot(WeatherCondition.fromForecastName(currently.get("icon").asString()),
+                Math.round(currently.get("temperature").asFloat()),
+                Math.round(currently.get("apparentTemperature").asFloat()),
+                daily.get("sunriseTime").asLong(), daily.get("sunsetTime").asLong());
+    }
+}
@@ -0,0 +1,192 @@
+package net.imatruck.weatherwatchface.benchmarks;
+
+import net.imatruck.weatherwatchface.lib.AdaptiveRefreshPolicy;
+import net.imatruck.weatherwatchface.lib.RefreshScheduler;
+import net.imatruck.weatherwatchface.lib.WeatherCondition;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays recorded weather histories through the refresh scheduler, with the fixed and the
+ * adaptive policy, and reports how many requests each makes against one every 15 minutes
+ * around the clock. Glances ending on a condition or temperature that has changed since it
+ * was fetched are counted too, to show what the saved requests cost.
+ * <p>
+ * The watch is worn from 7:00 to 23:30 UTC, in ambient mode except for a glance every half
+ * hour from 8:10 to 22:10, and charges otherwise. The mobile answers every request with the
+ * history entry current at that time.
+ */
+public class RefreshReplay {
+
+    private static final String[] HISTORIES = {"stable_winter.csv", "changeable_spring.csv"};
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long FIXED_INTERVAL_MILLIS = 15 * MINUTE;
+
+    private static final long WORN_FROM = 7 * HOUR;
+    private static final long WORN_UNTIL = 23 * HOUR + 30 * MINUTE;
+    // Off the hour, when the recorded weather changes
+    private static final long GLANCES_FROM = 8 * HOUR + 10 * MINUTE;
+    private static final long GLANCES_UNTIL = 22 * HOUR + 10 * MINUTE;
+    private static final long GLANCE_EVERY = 30 * MINUTE;
+    private static final long GLANCE_LENGTH = 10 * 1000L;
+
+    public static void main(String[] args) throws IOException {
+        for (String name : HISTORIES) {
+            History history = History.read("/refresh/" + name);
+            Result fixed = new Replay(history, RefreshScheduler.FIXED_POLICY).run();
+            Result adaptive = new Replay(history, new AdaptiveRefreshPolicy()).run();
+            long everyFifteen = (history.end - history.start) / FIXED_INTERVAL_MILLIS;
+
+            System.out.println(name + " (" + (history.end - history.start) / HOUR + " hours)");
+            System.out.println(String.format(Locale.US, "  every 15 min: %4d requests", everyFifteen));
+            System.out.println(String.format(Locale.US, "  fixed:        %4d requests, %s", fixed.requests, fixed.describeGlances()));
+            System.out.println(String.format(Locale.US, "  adaptive:     %4d requests, %s, %+.0f%% against every 15 min, %+.0f%% against fixed",
+                    adaptive.requests, adaptive.describeGlances(),
+                    100.0 * adaptive.requests / everyFifteen - 100,
+                    100.0 * adaptive.requests / fixed.requests - 100));
+        }
+    }
+
+    private static final class Result {
+        int requests;
+        int glances;
+        int outdatedGlances;
+
+        String describeGlances() {
+            return outdatedGlances + "/" + glances + " glances at outdated weather";
+        }
+    }
+
+    /**
+     * Weather entries sorted by time, each valid until the next one.
+     */
+    private static final class History {
+        final List<Long> times = new ArrayList<Long>();
+        final List<WeatherSnapshot> snapshots = new ArrayList<WeatherSnapshot>();
+        long start;
+        long end;
+
+        static History read(String resource) throws IOException {
+            History history = new History();
+            for (String line : Fixtures.read(resource).split("\n")) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                history.times.add(Long.parseLong(fields[0]) * 1000);
+                history.snapshots.add(new WeatherSnapshot(WeatherCondition.fromForecastName(fields[1]),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                        Long.parseLong(fields[4]), Long.parseLong(fields[5])));
+            }
+            history.start = history.times.get(0);
+            // Histories start at midnight and cover whole days
+            history.end = history.start + (history.times.get(history.times.size() - 1) - history.start) / DAY * DAY + DAY;
+            return history;
+        }
+
+        WeatherSnapshot at(long time) {
+            int i = 0;
+            while (i + 1 < times.size() && times.get(i + 1) <= time) {
+                i++;
+            }
+            return snapshots.get(i);
+        }
+    }
+
+    private static final class Replay implements RefreshScheduler.Host, RefreshScheduler.Clock {
+        final History history;
+        final RefreshScheduler scheduler;
+        final Result result = new Result();
+        long now;
+        long wakeUpAt = -1;
+        WeatherSnapshot shown;
+        boolean glancing;
+
+        Replay(History history, RefreshScheduler.Policy policy) {
+            this.history = history;
+            this.now = history.start;
+            this.scheduler = new RefreshScheduler(this, this, new Random(42), policy);
+            scheduler.setAmbient(true);
+        }
+
+        Result run() {
+            long nextUsage = history.start;
+            while (now < history.end) {
+                if (wakeUpAt != -1 && wakeUpAt <= nextUsage) {
+                    now = Math.max(now, wakeUpAt);
+                    wakeUpAt = -1;
+                    scheduler.onWakeUp();
+                } else {
+                    now = nextUsage;
+                    nextUsage = applyUsage();
+                }
+            }
+            result.requests = scheduler.getRequestCount();
+            return result;
+        }
+
+        /**
+         * @return when the usage changes next
+         */
+        private long applyUsage() {
+            long day = now - (now - history.start) % DAY;
+            long time = now - day;
+            boolean worn = time >= WORN_FROM && time < WORN_UNTIL;
+            scheduler.setVisible(worn);
+            if (!worn) {
+                return time < WORN_FROM ? day + WORN_FROM : day + DAY + WORN_FROM;
+            }
+
+            if (glancing) {
+                // Judged once the glance is over, it may have brought fresher weather
+                glancing = false;
+                result.glances++;
+                WeatherSnapshot actual = history.at(now);
+                if (shown == null || shown.getCondition() != actual.getCondition()
+                        || shown.getTemperature() != actual.getTemperature()) {
+                    result.outdatedGlances++;
+                }
+            } else if (time >= GLANCES_FROM && time <= GLANCES_UNTIL && (time - GLANCES_FROM) % GLANCE_EVERY == 0) {
+                glancing = true;
+                scheduler.setAmbient(false);
+                return now + GLANCE_LENGTH;
+            }
+            scheduler.setAmbient(true);
+
+            long nextGlance = time < GLANCES_FROM ? GLANCES_FROM
+                    : GLANCES_FROM + ((time - GLANCES_FROM) / GLANCE_EVERY + 1) * GLANCE_EVERY;
+            return day + (nextGlance <= GLANCES_UNTIL ? nextGlance : WORN_UNTIL);
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        @Override
+        public void requestRefresh(boolean force) {
+            shown = history.at(now);
+            scheduler.onRequestDone(true);
+            scheduler.onWeatherReceived(now, shown);
+        }
+
+        @Override
+        public void scheduleWakeUp(long delayMillis) {
+            wakeUpAt = now + delayMillis;
+        }
+
+        @Override
+        public void cancelWakeUp() {
+            wakeUpAt = -1;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.imatruck.weatherwatchface.benchmarks;
+
+import net.imatruck.weatherwatchface.lib.ForecastResponseParser;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshotCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the payload sent to the watch, for snapshots parsed from the
+ * recorded responses. The full response carries the hourly timeline, the other doesn't.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotCodecBenchmark {
+
+    @Param({"forecast_full.json", "forecast_excluded.json"})
+    public String fixture;
+
+    private WeatherSnapshot mSnapshot;
+    private byte[] mEncoded;
+
+    @Setup
+    public void loadFixture() throws IOException {
+        mSnapshot = ForecastResponseParser.parse(new StringReader(Fixtures.read("/forecast/" + fixture)));
+        mEncoded = WeatherSnapshotCodec.encode(mSnapshot);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return WeatherSnapshotCodec.encode(mSnapshot);
+    }
+
+    @Benchmark
+    public WeatherSnapshot decode() {
+        return WeatherSnapshotCodec.decode(mEncoded);
+    }
+}
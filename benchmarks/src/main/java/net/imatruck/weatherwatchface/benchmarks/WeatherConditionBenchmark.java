@@ -0,0 +1,63 @@
+package net.imatruck.weatherwatchface.benchmarks;
+
+import net.imatruck.weatherwatchface.lib.WeatherCondition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Condition lookups done for every forecast entry and every redraw of the weather layer,
+ * cycling through all conditions and one name and code nobody knows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherConditionBenchmark {
+
+    private static final String[] NAMES;
+    private static final int[] WIRE_CODES;
+    private static final WeatherCondition[] CONDITIONS = WeatherCondition.values();
+
+    static {
+        NAMES = new String[CONDITIONS.length + 1];
+        WIRE_CODES = new int[CONDITIONS.length + 1];
+        for (int i = 0; i < CONDITIONS.length; i++) {
+            NAMES[i] = CONDITIONS[i].getForecastName();
+            WIRE_CODES[i] = CONDITIONS[i].getWireCode();
+        }
+        NAMES[CONDITIONS.length] = "tornado";
+        WIRE_CODES[CONDITIONS.length] = 99;
+    }
+
+    private int mNext;
+
+    @Benchmark
+    public WeatherCondition fromForecastName() {
+        mNext = (mNext + 1) % NAMES.length;
+        return WeatherCondition.fromForecastName(NAMES[mNext]);
+    }
+
+    @Benchmark
+    public WeatherCondition fromWireCode() {
+        mNext = (mNext + 1) % WIRE_CODES.length;
+        return WeatherCondition.fromWireCode(WIRE_CODES[mNext]);
+    }
+
+    @Benchmark
+    public int backgroundColor() {
+        mNext = (mNext + 1) % (CONDITIONS.length * 2);
+        return CONDITIONS[mNext / 2].getBackgroundColor(mNext % 2 == 1);
+    }
+}
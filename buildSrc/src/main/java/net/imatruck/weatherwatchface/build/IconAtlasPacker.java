@@ -0,0 +1,163 @@
+package net.imatruck.weatherwatchface.build;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import net.imatruck.weatherwatchface.lib.IconAtlasLayout;
+
+/**
+ * Packs the weather icons into one atlas, pre-scaled for a face size, laid out as described
+ * by {@link IconAtlasLayout}. The rows are full color, ambient grey outline, then low-bit
+ * white outline with no partial alpha. Each icon sits in the bottom left corner of its cell,
+ * so drawing a whole cell puts it where drawing the icon alone would.
+ */
+public class IconAtlasPacker {
+
+    // Icons are drawn at their hdpi pixel size on a face this size
+    public static final float REFERENCE_SIZE = 320f;
+
+    // Outline width on the reference face
+    private static final float OUTLINE_WIDTH = 2f;
+    private static final int AMBIENT_RGB = 0xBBBBBB;
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int LOW_BIT_ALPHA_THRESHOLD = 128;
+
+    private final List<BufferedImage> mIcons = new ArrayList<BufferedImage>();
+    private final int mMaxWidth;
+    private final int mMaxHeight;
+
+    /**
+     * @param iconDir holds a PNG for each of {@link IconAtlasLayout#getIconNames()}
+     */
+    public IconAtlasPacker(File iconDir) throws IOException {
+        int maxWidth = 0;
+        int maxHeight = 0;
+        for (File file : getIconFiles(iconDir)) {
+            BufferedImage icon = ImageIO.read(file);
+            if (icon == null) {
+                throw new IOException("Not an image: " + file);
+            }
+            mIcons.add(icon);
+            maxWidth = Math.max(maxWidth, icon.getWidth());
+            maxHeight = Math.max(maxHeight, icon.getHeight());
+        }
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+    }
+
+    /**
+     * @return the icons in column order
+     */
+    public static List<File> getIconFiles(File iconDir) {
+        List<File> files = new ArrayList<File>();
+        for (String name : IconAtlasLayout.getIconNames()) {
+            files.add(new File(iconDir, name + ".png"));
+        }
+        return files;
+    }
+
+    /**
+     * Writes the atlas for a face of the given size as a PNG.
+     */
+    public void write(int faceSize, File output) throws IOException {
+        File dir = output.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+        ImageIO.write(pack(faceSize / REFERENCE_SIZE), "png", output);
+    }
+
+    BufferedImage pack(float scale) {
+        int cellWidth = Math.max(1, Math.round(mMaxWidth * scale));
+        int cellHeight = Math.max(1, Math.round(mMaxHeight * scale));
+        int outlineWidth = Math.max(1, Math.round(OUTLINE_WIDTH * scale));
+
+        BufferedImage atlas = new BufferedImage(IconAtlasLayout.COLUMNS * (cellWidth + IconAtlasLayout.GUTTER),
+                IconAtlasLayout.ROWS * (cellHeight + IconAtlasLayout.GUTTER), BufferedImage.TYPE_INT_ARGB);
+        for (int column = 0; column < mIcons.size(); column++) {
+            BufferedImage icon = scale(mIcons.get(column), scale);
+            int[] alpha = getAlpha(icon);
+            int[] outline = getOutline(alpha, icon.getWidth(), icon.getHeight(), outlineWidth);
+
+            int left = column * (cellWidth + IconAtlasLayout.GUTTER);
+            for (int row = 0; row < IconAtlasLayout.ROWS; row++) {
+                int top = row * (cellHeight + IconAtlasLayout.GUTTER) + cellHeight - icon.getHeight();
+                for (int y = 0; y < icon.getHeight(); y++) {
+                    for (int x = 0; x < icon.getWidth(); x++) {
+                        int i = y * icon.getWidth() + x;
+                        atlas.setRGB(left + x, top + y, getPixel(row, icon.getRGB(x, y), outline[i]));
+                    }
+                }
+            }
+        }
+        return atlas;
+    }
+
+    private static int getPixel(int row, int argb, int outlineAlpha) {
+        switch (row) {
+            case IconAtlasLayout.ROW_AMBIENT:
+                return outlineAlpha << 24 | AMBIENT_RGB;
+            case IconAtlasLayout.ROW_LOW_BIT:
+                // Low-bit screens can't show greys or blended edges
+                return outlineAlpha >= LOW_BIT_ALPHA_THRESHOLD ? WHITE : 0;
+            default:
+                return argb;
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage icon, float scale) {
+        int width = Math.max(1, Math.round(icon.getWidth() * scale));
+        int height = Math.max(1, Math.round(icon.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(icon, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+
+    private static int[] getAlpha(BufferedImage icon) {
+        int[] alpha = new int[icon.getWidth() * icon.getHeight()];
+        for (int y = 0; y < icon.getHeight(); y++) {
+            for (int x = 0; x < icon.getWidth(); x++) {
+                alpha[y * icon.getWidth() + x] = icon.getRGB(x, y) >>> 24;
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * @return the alpha of the silhouette minus the same silhouette eroded by the outline
+     * width, outside the icon counts as transparent
+     */
+    static int[] getOutline(int[] alpha, int width, int height, int outlineWidth) {
+        int[] outline = new int[alpha.length];
+        int radiusSquared = outlineWidth * outlineWidth;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int eroded = alpha[y * width + x];
+                for (int dy = -outlineWidth; dy <= outlineWidth && eroded > 0; dy++) {
+                    for (int dx = -outlineWidth; dx <= outlineWidth && eroded > 0; dx++) {
+                        if (dx * dx + dy * dy > radiusSquared) {
+                            continue;
+                        }
+                        int nx = x + dx;
+                        int ny = y + dy;
+                        boolean inside = nx >= 0 && ny >= 0 && nx < width && ny < height;
+                        eroded = Math.min(eroded, inside ? alpha[ny * width + nx] : 0);
+                    }
+                }
+                outline[y * width + x] = alpha[y * width + x] - eroded;
+            }
+        }
+        return outline;
+    }
+}
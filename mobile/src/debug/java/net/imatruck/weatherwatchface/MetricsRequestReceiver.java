@@ -0,0 +1,78 @@
+package net.imatruck.weatherwatchface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.Wearable;
+
+import net.imatruck.weatherwatchface.lib.WeatherWatchFaceConstants;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug builds only. Asks every connected watch for its render metrics and refresh traces,
+ * which {@link WeatherService} logs when they come back:
+ * <pre>
+ * adb shell am broadcast -a net.imatruck.weatherwatchface.REQUEST_METRICS
+ * </pre>
+ */
+public class MetricsRequestReceiver extends BroadcastReceiver {
+
+    private static final String TAG = MetricsRequestReceiver.class.getSimpleName();
+
+    // Broadcast receivers get 10 seconds with goAsync
+    private static final long TIMEOUT_MILLIS = 4000;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final Context appContext = context.getApplicationContext();
+        final PendingResult pendingResult = goAsync();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    requestMetrics(appContext);
+                }
+                finally {
+                    pendingResult.finish();
+                }
+            }
+        }, TAG).start();
+    }
+
+    private static void requestMetrics(Context context) {
+        GoogleApiClient client = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult connection = client.blockingConnect(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (!connection.isSuccess()) {
+            Log.e(TAG, "Couldn't connect to Google API: " + connection.getErrorCode());
+            return;
+        }
+        try {
+            NodeApi.GetConnectedNodesResult nodes = Wearable.NodeApi.getConnectedNodes(client)
+                    .await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            for (Node node : nodes.getNodes()) {
+                MessageApi.SendMessageResult result = Wearable.MessageApi.sendMessage(client, node.getId(),
+                        WeatherWatchFaceConstants.MESSAGE_URI_REQUEST_METRICS, new byte[0])
+                        .await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (result.getStatus().isSuccess()) {
+                    Log.i(TAG, "Requested metrics from " + node.getId());
+                }
+                else {
+                    Log.e(TAG, "ERROR: failed to request metrics from " + node.getId());
+                }
+            }
+        }
+        finally {
+            client.disconnect();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package net.imatruck.weatherwatchface;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.Base64;
+import android.util.Log;
+
+import net.imatruck.weatherwatchface.lib.HttpClient;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshotCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Forecasts keyed by rounded coordinates, kept in preferences so they survive between
+ * {@link WeatherService} instances. Entries older than the TTL are treated as missing.
+ * <p>
+ * Also keeps the last forecast of a few buckets with its HTTP validators, past the TTL, so
+ * the request made once an entry expires can be conditional.
+ */
+class ForecastCache implements HttpClient.ValidatorStore<WeatherSnapshot> {
+
+    private static final String TAG = ForecastCache.class.getSimpleName();
+
+    static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    // About 11km of latitude, weather doesn't change much within that
+    private static final double BUCKET_SIZE_DEGREES = 0.1;
+
+    private static final String PREFS_NAME = "forecast_cache";
+    private static final String PREF_HITS = "hits";
+    private static final String PREF_MISSES = "misses";
+    private static final String ENTRY_PREFIX = "entry_";
+    private static final String TIME_SUFFIX = "_time";
+
+    // Buckets with validators, the least recently saved go first
+    private static final int MAX_VALIDATED = 4;
+    private static final String PREF_VALIDATED_KEYS = "validated_keys";
+    private static final String VALIDATED_PREFIX = "validated_";
+    private static final String ETAG_SUFFIX = "_etag";
+    private static final String LAST_MODIFIED_SUFFIX = "_last_modified";
+
+    private final SharedPreferences mPrefs;
+    private final long mTtlMillis;
+
+    ForecastCache(Context context, long ttlMillis) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the cached forecast for this location if it's younger than the TTL, null otherwise
+     */
+    synchronized WeatherSnapshot get(double latitude, double longitude, long nowMillis) {
+        String key = getBucketKey(latitude, longitude);
+        String encoded = mPrefs.getString(key, null);
+        long fetchedAt = mPrefs.getLong(key + TIME_SUFFIX, 0);
+
+        WeatherSnapshot snapshot = null;
+        if (encoded != null && nowMillis >= fetchedAt && nowMillis - fetchedAt < mTtlMillis) {
+            try {
+                snapshot = WeatherSnapshotCodec.decode(Base64.decode(encoded, Base64.NO_WRAP));
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Dropping unreadable cache entry " + key, e);
+            }
+        }
+
+        String counter = snapshot != null ? PREF_HITS : PREF_MISSES;
+        mPrefs.edit().putLong(counter, mPrefs.getLong(counter, 0) + 1).apply();
+        return snapshot;
+    }
+
+    synchronized void put(double latitude, double longitude, WeatherSnapshot snapshot, long nowMillis) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        removeExpired(editor, nowMillis);
+
+        String key = getBucketKey(latitude, longitude);
+        editor.putString(key, Base64.encodeToString(WeatherSnapshotCodec.encode(snapshot), Base64.NO_WRAP));
+        editor.putLong(key + TIME_SUFFIX, nowMillis);
+        editor.apply();
+    }
+
+    /**
+     * @param key a {@link #getBucketKey bucket key}
+     */
+    @Override
+    public synchronized HttpClient.Validated<WeatherSnapshot> load(String key) {
+        String encoded = mPrefs.getString(VALIDATED_PREFIX + key, null);
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            WeatherSnapshot snapshot = WeatherSnapshotCodec.decode(Base64.decode(encoded, Base64.NO_WRAP));
+            return new HttpClient.Validated<WeatherSnapshot>(
+                    mPrefs.getString(VALIDATED_PREFIX + key + ETAG_SUFFIX, null),
+                    mPrefs.getString(VALIDATED_PREFIX + key + LAST_MODIFIED_SUFFIX, null), snapshot);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Ignoring unreadable validated forecast " + key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void save(String key, HttpClient.Validated<WeatherSnapshot> validated) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        List<String> keys = new ArrayList<String>(
+                Arrays.asList(TextUtils.split(mPrefs.getString(PREF_VALIDATED_KEYS, ""), ",")));
+        keys.remove(key);
+        if (validated == null) {
+            removeValidated(editor, key);
+        }
+        else {
+            editor.putString(VALIDATED_PREFIX + key,
+                    Base64.encodeToString(WeatherSnapshotCodec.encode(validated.getValue()), Base64.NO_WRAP));
+            editor.putString(VALIDATED_PREFIX + key + ETAG_SUFFIX, validated.getETag());
+            editor.putString(VALIDATED_PREFIX + key + LAST_MODIFIED_SUFFIX, validated.getLastModified());
+            keys.add(key);
+            while (keys.size() > MAX_VALIDATED) {
+                removeValidated(editor, keys.remove(0));
+            }
+        }
+        editor.putString(PREF_VALIDATED_KEYS, TextUtils.join(",", keys));
+        editor.apply();
+    }
+
+    long getHitCount() {
+        return mPrefs.getLong(PREF_HITS, 0);
+    }
+
+    long getMissCount() {
+        return mPrefs.getLong(PREF_MISSES, 0);
+    }
+
+    private void removeExpired(SharedPreferences.Editor editor, long nowMillis) {
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(ENTRY_PREFIX) && key.endsWith(TIME_SUFFIX)
+                    && nowMillis - (Long) entry.getValue() >= mTtlMillis) {
+                editor.remove(key);
+                editor.remove(key.substring(0, key.length() - TIME_SUFFIX.length()));
+            }
+        }
+    }
+
+    private static void removeValidated(SharedPreferences.Editor editor, String key) {
+        editor.remove(VALIDATED_PREFIX + key);
+        editor.remove(VALIDATED_PREFIX + key + ETAG_SUFFIX);
+        editor.remove(VALIDATED_PREFIX + key + LAST_MODIFIED_SUFFIX);
+    }
+
+    static String getBucketKey(double latitude, double longitude) {
+        return String.format(Locale.US, ENTRY_PREFIX + "%d_%d",
+                Math.round(latitude / BUCKET_SIZE_DEGREES), Math.round(longitude / BUCKET_SIZE_DEGREES));
+    }
+
+    /**
+     * @return the coordinate in the middle of the bucket it falls in
+     */
+    static double getBucketCenter(double degrees) {
+        return Math.round(degrees / BUCKET_SIZE_DEGREES) * BUCKET_SIZE_DEGREES;
+    }
+}
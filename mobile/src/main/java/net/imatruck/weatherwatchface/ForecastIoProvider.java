@@ -0,0 +1,54 @@
+package net.imatruck.weatherwatchface;
+
+import android.util.Log;
+
+import net.imatruck.weatherwatchface.lib.ForecastResponseParser;
+import net.imatruck.weatherwatchface.lib.HttpClient;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Weather from the Forecast.io API, fetched with a shared {@link HttpClient} so connections
+ * are reused between fetches. Forecasts are asked for the middle of their {@link ForecastCache}
+ * bucket, so the URL doesn't change as the location jitters and the validators kept for the
+ * bucket make the request conditional.
+ */
+class ForecastIoProvider implements WeatherProvider {
+
+    private static final String TAG = ForecastIoProvider.class.getSimpleName();
+
+    private static final String FORECAST_URL = "https://api.forecast.io/forecast/%s/%.4f,%.4f?units=ca&exclude=%s";
+    private static final String EXCLUDE_URL = "minutely,alerts,flags";
+
+    private static final HttpClient.BodyParser<WeatherSnapshot> PARSER = new HttpClient.BodyParser<WeatherSnapshot>() {
+        @Override
+        public WeatherSnapshot parse(Reader body) throws IOException {
+            return ForecastResponseParser.parse(body);
+        }
+    };
+
+    private final String mApiKey;
+    private final HttpClient mHttpClient = new HttpClient();
+    private final HttpClient.ValidatorStore<WeatherSnapshot> mValidators;
+
+    ForecastIoProvider(String apiKey, HttpClient.ValidatorStore<WeatherSnapshot> validators) {
+        mApiKey = apiKey;
+        mValidators = validators;
+    }
+
+    @Override
+    public WeatherSnapshot getWeather(double latitude, double longitude, long timeoutMillis) throws IOException {
+        String url = String.format(Locale.US, FORECAST_URL, mApiKey, ForecastCache.getBucketCenter(latitude),
+                ForecastCache.getBucketCenter(longitude), EXCLUDE_URL);
+        try {
+            return mHttpClient.get(url, timeoutMillis, PARSER, mValidators,
+                    ForecastCache.getBucketKey(latitude, longitude));
+        } finally {
+            Log.d(TAG, "Requests: " + mHttpClient.getRequestCount() + ", not modified: "
+                    + mHttpClient.getNotModifiedCount() + ", bytes received: " + mHttpClient.getBytesReceived());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.imatruck.weatherwatchface;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.util.Log;
+
+import com.google.android.gms.location.FusedLocationProviderApi;
+
+/**
+ * Receives the location updates {@link LocationTracker} asked for, and starts
+ * {@link WeatherService} to get the weather once the phone moved away from the last
+ * forecast location.
+ */
+public class LocationReceiver extends BroadcastReceiver {
+
+    private static final String TAG = LocationReceiver.class.getSimpleName();
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Location location = intent.getParcelableExtra(FusedLocationProviderApi.KEY_LOCATION_CHANGED);
+        if (location == null) {
+            return;
+        }
+        LocationTracker tracker = new LocationTracker(context.getApplicationContext());
+        tracker.update(location);
+        if (tracker.hasMovedSinceForecast()) {
+            Log.d(TAG, "Moved away from last forecast location");
+            context.startService(new Intent(context, WeatherService.class)
+                    .setAction(WeatherService.ACTION_LOCATION_MOVED));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package net.imatruck.weatherwatchface;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationServices;
+
+/**
+ * Follows the phone's location with balanced power updates and remembers where the last
+ * forecast was fetched, so a new one is only needed once the user moved far enough.
+ * <p>
+ * Updates go to {@link LocationReceiver} through a PendingIntent, since the service asking
+ * for them only lives for the length of a request. Both locations are kept in preferences,
+ * so every tracker sees the last update wherever it landed.
+ */
+class LocationTracker {
+
+    private static final String TAG = LocationTracker.class.getSimpleName();
+
+    static final float MOVE_THRESHOLD_METERS = 5000;
+
+    private static final long UPDATE_INTERVAL_MILLIS = 15 * 60 * 1000;
+    // Takes fixes other apps asked for as they come, at no extra cost
+    private static final long FASTEST_UPDATE_INTERVAL_MILLIS = 60 * 1000;
+    // Smaller moves can't change the outcome of the threshold by much
+    private static final float SMALLEST_DISPLACEMENT_METERS = 1000;
+
+    private static final String PREFS_NAME = "location";
+    private static final String PREF_LATITUDE = "latitude";
+    private static final String PREF_LONGITUDE = "longitude";
+    private static final String PREF_FORECAST_LATITUDE = "forecast_latitude";
+    private static final String PREF_FORECAST_LONGITUDE = "forecast_longitude";
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    private final float[] mDistance = new float[1];
+
+    LocationTracker(Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Asks for updates to be sent to {@link LocationReceiver}. Asking again with the same
+     * PendingIntent replaces the request, so this is safe to call on every connection, and it
+     * brings the request back after a reboot dropped it.
+     */
+    void start(GoogleApiClient client) {
+        LocationRequest request = LocationRequest.create()
+                .setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY)
+                .setInterval(UPDATE_INTERVAL_MILLIS)
+                .setFastestInterval(FASTEST_UPDATE_INTERVAL_MILLIS)
+                .setSmallestDisplacement(SMALLEST_DISPLACEMENT_METERS);
+        PendingIntent intent = PendingIntent.getBroadcast(mContext, 0,
+                new Intent(mContext, LocationReceiver.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        LocationServices.FusedLocationApi.requestLocationUpdates(client, request, intent);
+    }
+
+    /**
+     * Takes the last location known by the fused provider, which may be fresher than the
+     * last update we got.
+     */
+    void refresh(GoogleApiClient client) {
+        update(LocationServices.FusedLocationApi.getLastLocation(client));
+    }
+
+    synchronized boolean hasLocation() {
+        return mPrefs.contains(PREF_LATITUDE);
+    }
+
+    synchronized double getLatitude() {
+        return Double.longBitsToDouble(mPrefs.getLong(PREF_LATITUDE, 0));
+    }
+
+    synchronized double getLongitude() {
+        return Double.longBitsToDouble(mPrefs.getLong(PREF_LONGITUDE, 0));
+    }
+
+    /**
+     * @return true if no forecast was fetched yet, or the current location is further than
+     * {@link #MOVE_THRESHOLD_METERS} from where it was
+     */
+    synchronized boolean hasMovedSinceForecast() {
+        if (!hasLocation() || !mPrefs.contains(PREF_FORECAST_LATITUDE)) {
+            return true;
+        }
+        Location.distanceBetween(getLatitude(), getLongitude(), getForecastLatitude(), getForecastLongitude(), mDistance);
+        return mDistance[0] > MOVE_THRESHOLD_METERS;
+    }
+
+    synchronized double getForecastLatitude() {
+        return Double.longBitsToDouble(mPrefs.getLong(PREF_FORECAST_LATITUDE, 0));
+    }
+
+    synchronized double getForecastLongitude() {
+        return Double.longBitsToDouble(mPrefs.getLong(PREF_FORECAST_LONGITUDE, 0));
+    }
+
+    synchronized void setForecastLocation(double latitude, double longitude) {
+        mPrefs.edit()
+                .putLong(PREF_FORECAST_LATITUDE, Double.doubleToRawLongBits(latitude))
+                .putLong(PREF_FORECAST_LONGITUDE, Double.doubleToRawLongBits(longitude))
+                .apply();
+    }
+
+    synchronized void update(Location location) {
+        if (location == null) {
+            return;
+        }
+        mPrefs.edit()
+                .putLong(PREF_LATITUDE, Double.doubleToRawLongBits(location.getLatitude()))
+                .putLong(PREF_LONGITUDE, Double.doubleToRawLongBits(location.getLongitude()))
+                .apply();
+        Log.d(TAG, "Location: " + location.getLatitude() + ", " + location.getLongitude());
+    }
+}
@@ -0,0 +1,19 @@
+package net.imatruck.weatherwatchface;
+
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+
+import java.io.IOException;
+
+/**
+ * Where {@link WeatherService} gets its weather from.
+ */
+interface WeatherProvider {
+
+    /**
+     * Blocks, only call it off the main thread.
+     *
+     * @return the weather at the location, or null if the provider has none for it
+     * @throws IOException if the weather couldn't be fetched within the timeout
+     */
+    WeatherSnapshot getWeather(double latitude, double longitude, long timeoutMillis) throws IOException;
+}
@@ -1,18 +1,17 @@
 package net.imatruck.weatherwatchface;
 
-import android.location.Location;
-import android.os.AsyncTask;
+import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.eclipsesource.json.JsonObject;
-import com.github.dvdme.ForecastIOLib.ForecastIO;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.MessageApi;
 import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.PutDataMapRequest;
@@ -20,125 +19,269 @@ import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
+import net.imatruck.weatherwatchface.lib.FetchCoalescer;
+import net.imatruck.weatherwatchface.lib.RefreshTracer;
+import net.imatruck.weatherwatchface.lib.TaskPipeline;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshotCodec;
 import net.imatruck.weatherwatchface.lib.WeatherWatchFaceConstants;
 
-import java.util.Random;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class WeatherService extends WearableListenerService implements
         MessageApi.MessageListener, GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener {
+        GoogleApiClient.OnConnectionFailedListener,
+        FetchCoalescer.Host<WeatherService.WeatherRequest> {
 
     private static final String TAG = WeatherService.class.getSimpleName();
     private static final String API_KEY = WeatherServiceApiKey.API_KEY;
-    private static final String EXCLUDE_URL = "hourly,minutely";
 
-    ForecastIO mFio;
-
-    String mLat, mLong;
+    // Sent by LocationReceiver
+    static final String ACTION_LOCATION_MOVED = "net.imatruck.weatherwatchface.LOCATION_MOVED";
 
     GoogleApiClient mGoogleApiClient;
 
+    WeatherSyncState mSyncState;
+    ForecastCache mForecastCache;
+    LocationTracker mLocationTracker;
+    WeatherProvider mWeatherProvider;
+
     private static final int MSG_GET_WEATHER = 0;
     private static final int MSG_GET_WEATHER_FORCE = 1;
 
-    private AsyncTask<Void, Void, Void> mGetWeatherTask;
+    private static final long FETCH_TIMEOUT_MILLIS = 30000;
+
+    private TaskPipeline mPipeline;
+
+    // Only touched on the main thread
+    private FetchCoalescer<WeatherRequest> mCoalescer;
+    private TaskPipeline.Run mGetWeatherRun;
+    // Set while started by LocationReceiver, the service stops itself once no fetch is left
+    private int mLastStartId = -1;
 
     Handler mGetWeatherDataHandler = new Handler() {
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_GET_WEATHER:
-                    cancelGetWeatherTask();
-                    mGetWeatherTask = new GetWeatherTask();
-                    mGetWeatherTask.execute();
+                    requestWeather(false, (WeatherRequest) msg.obj);
                     break;
                 case MSG_GET_WEATHER_FORCE:
-                    cancelGetWeatherTask();
-                    mGetWeatherTask = new GetWeatherTask(true);
-                    mGetWeatherTask.execute();
+                    requestWeather(true, (WeatherRequest) msg.obj);
                     break;
             }
         }
     };
 
-    private class GetWeatherTask extends AsyncTask<Void, Void, Void> {
+    /**
+     * Starts a fetch, or joins the one in flight, see {@link FetchCoalescer}. Only the request
+     * that started a fetch gets its trace answered.
+     *
+     * @param request the watch's request, null if the fetch isn't for one
+     */
+    private void requestWeather(boolean force, WeatherRequest request) {
+        countRequest(mCoalescer.request(force, request), force);
+    }
+
+    @Override
+    public boolean startFetch(FetchCoalescer.Fetch<WeatherRequest> fetch) {
+        TaskPipeline.Run run = mPipeline.submit(new GetWeatherTask(fetch), FETCH_TIMEOUT_MILLIS);
+        if (run == null) {
+            Log.e(TAG, "Weather pipeline is full, dropping request");
+            return false;
+        }
+        mGetWeatherRun = run;
+        return true;
+    }
+
+    private void onGetWeatherTaskDone(FetchCoalescer.Fetch<WeatherRequest> fetch) {
+        // Only one fetch runs at a time, this was the run in flight
+        mGetWeatherRun = null;
+        countRequest(mCoalescer.onFetchDone(fetch), true);
+        stopIfIdle();
+    }
+
+    private void stopIfIdle() {
+        if (mLastStartId != -1 && !mCoalescer.isFetching() && stopSelfResult(mLastStartId)) {
+            mLastStartId = -1;
+        }
+    }
 
-        boolean mForceRefresh = false;
+    private void countRequest(FetchCoalescer.Result result, boolean force) {
+        if (result == FetchCoalescer.Result.STARTED) {
+            mSyncState.countIssuedFetch();
+        } else if (result == FetchCoalescer.Result.JOINED) {
+            mSyncState.countJoinedRequest();
+            Log.d(TAG, "Joined weather fetch in flight" + (force ? " (forced)" : "")
+                    + ", issued: " + mSyncState.getIssuedFetchCount()
+                    + ", joined: " + mSyncState.getJoinedRequestCount());
+        }
+    }
 
-        private static final String FORECAST_KEY_ICON = "icon";
-        private static final String FORECAST_KEY_TEMPERATURE = "temperature";
-        private static final String FORECAST_KEY_APPARENT_TEMPERATURE = "apparentTemperature";
-        private static final String FORECAST_KEY_SUNRISE_TIME = "sunriseTime";
-        private static final String FORECAST_KEY_SUNSET_TIME = "sunsetTime";
+    /**
+     * Gets the weather for the last known location and puts it in the Data Layer, in stages:
+     * connect, locate, fetch, encode and send. Every blocking call is bounded by the run's
+     * deadline. The stage timings go along with the weather when the request is traced.
+     */
+    private class GetWeatherTask extends TaskPipeline.Job {
 
-        public GetWeatherTask() {}
+        private final FetchCoalescer.Fetch<WeatherRequest> mFetch;
+        private final WeatherRequest mRequest;
+        private long mQueueMillis;
 
-        public GetWeatherTask(boolean forceRefresh) {
-            this.mForceRefresh = forceRefresh;
+        public GetWeatherTask(FetchCoalescer.Fetch<WeatherRequest> fetch) {
+            this.mFetch = fetch;
+            this.mRequest = fetch.getRequest();
         }
 
         @Override
-        protected Void doInBackground(Void... params) {
-            mGoogleApiClient.blockingConnect();
-            boolean gotForecast = mFio.getForecast(mLat, mLong);
-            if (gotForecast) {
-                JsonObject currently = mFio.getCurrently();
-                JsonObject daily = mFio.getDaily().get("data").asArray().get(0).asObject();
-                Log.d(TAG, "Got weather for location: " + mFio.getLatitude() + ", " + mFio.getLongitude());
-                Log.d(TAG, "Current weather: " + currently.get(FORECAST_KEY_ICON) + ", " +
-                        currently.get(FORECAST_KEY_TEMPERATURE) + " (" + currently.get(FORECAST_KEY_APPARENT_TEMPERATURE) + ")");
-                sendWeatherData(currently, daily);
+        protected void run(TaskPipeline.Run run) throws IOException {
+            if (mRequest != null) {
+                mQueueMillis = SystemClock.elapsedRealtime() - mRequest.receivedAt;
+            }
+
+            run.stage("connect");
+            // The client stays connected between tasks, this only blocks the first time
+            if (!mGoogleApiClient.isConnected()) {
+                ConnectionResult result = mGoogleApiClient.blockingConnect(run.remainingMillis(), TimeUnit.MILLISECONDS);
+                if (!result.isSuccess()) {
+                    throw new IOException("Couldn't connect to Google API: " + result.getErrorCode());
+                }
+            }
+
+            run.stage("locate");
+            mLocationTracker.refresh(mGoogleApiClient);
+            if (!mLocationTracker.hasLocation()) {
+                Log.e(TAG, "No location yet, can't get weather");
+                return;
+            }
+            double latitude = mLocationTracker.getLatitude();
+            double longitude = mLocationTracker.getLongitude();
+
+            run.stage("fetch");
+            long now = System.currentTimeMillis();
+            WeatherSnapshot snapshot;
+            if (mLocationTracker.hasMovedSinceForecast()) {
+                snapshot = mForecastCache.get(latitude, longitude, now);
             }
             else {
-                Log.e(TAG, "Couldn't get weather for last location");
+                // Close enough to the last forecast, it's still good while it's in the cache
+                snapshot = mForecastCache.get(mLocationTracker.getForecastLatitude(),
+                        mLocationTracker.getForecastLongitude(), now);
+            }
+            if (snapshot != null) {
+                Log.d(TAG, "Using cached weather: " + snapshot);
+            }
+            else {
+                snapshot = getForecast(latitude, longitude, run);
+                if (snapshot != null) {
+                    mForecastCache.put(latitude, longitude, snapshot, now);
+                    mLocationTracker.setForecastLocation(latitude, longitude);
+                }
+            }
+            Log.d(TAG, "Forecast cache hits: " + mForecastCache.getHitCount()
+                    + ", misses: " + mForecastCache.getMissCount());
+            if (snapshot == null) {
+                return;
             }
-            return null;
-        }
 
-        private void sendWeatherData(JsonObject currently, JsonObject daily) {
-            if (currently != null) {
-                String temp = String.valueOf(Math.round(currently.get(FORECAST_KEY_TEMPERATURE).asFloat()));
-                String feelsLike = String.valueOf(Math.round(currently.get(FORECAST_KEY_APPARENT_TEMPERATURE).asFloat()));
+            run.stage("encode");
+            byte[] encodedSnapshot = WeatherSnapshotCodec.encode(snapshot);
+            // A forced refresh means the watch has nothing to show, always send it something
+            if (!mFetch.decideForce() && mSyncState.isLastSent(encodedSnapshot)) {
+                Log.d(TAG, "Weather unchanged, not sending: " + snapshot);
+                return;
+            }
 
-                PutDataMapRequest putDMR = PutDataMapRequest.create(WeatherWatchFaceConstants.DATASYNC_URI_WEATHER_INFO);
-                putDMR.getDataMap().putString(WeatherWatchFaceConstants.KEY_WEATHER_ICON, currently.get(FORECAST_KEY_ICON).asString());
-                putDMR.getDataMap().putString(WeatherWatchFaceConstants.KEY_WEATHER_TEMP, temp);
+            run.stage("send");
+            sendWeatherData(snapshot, encodedSnapshot, run);
+        }
 
-                if (daily != null) {
-                    long sunrise = daily.get(FORECAST_KEY_SUNRISE_TIME).asLong();
-                    long sunset = daily.get(FORECAST_KEY_SUNSET_TIME).asLong();
-                    putDMR.getDataMap().putLong(WeatherWatchFaceConstants.KEY_WEATHER_SUNRISE, sunrise);
-                    putDMR.getDataMap().putLong(WeatherWatchFaceConstants.KEY_WEATHER_SUNSET, sunset);
+        @Override
+        protected void onFinished(TaskPipeline.Run run) {
+            if (run.getOutcome() == TaskPipeline.Outcome.COMPLETED) {
+                Log.d(TAG, "Weather task done: " + run.getTimings());
+            }
+            else {
+                Log.e(TAG, "Weather task " + run.getOutcome() + ": " + run.getTimings(), run.getFailure());
+            }
+            mGetWeatherDataHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onGetWeatherTaskDone(mFetch);
                 }
+            });
+        }
 
-                if (!temp.equals(feelsLike)) {
-                    putDMR.getDataMap().putString(WeatherWatchFaceConstants.KEY_WEATHER_FEELSLIKE, feelsLike);
+        private WeatherSnapshot getForecast(double latitude, double longitude, TaskPipeline.Run run) {
+            try {
+                WeatherSnapshot snapshot = mWeatherProvider.getWeather(latitude, longitude, run.remainingMillis());
+                if (snapshot == null) {
+                    Log.e(TAG, "Forecast for last location has no current weather");
                 }
-
-                if (mForceRefresh) {
-                    putDMR.getDataMap().putInt(WeatherWatchFaceConstants.KEY_WEATHER_FORCE_REFRESH,
-                            new Random().nextInt(100));
+                else {
+                    Log.d(TAG, "Got weather for location: " + latitude + ", " + longitude + ": " + snapshot);
                 }
+                return snapshot;
+            } catch (IOException e) {
+                Log.e(TAG, "Couldn't get weather for last location", e);
+                return null;
+            }
+        }
+
+        private void sendWeatherData(WeatherSnapshot snapshot, byte[] encodedSnapshot, TaskPipeline.Run run) {
+            long sequence = mSyncState.nextSequence();
 
-                PutDataRequest request = putDMR.asPutDataRequest();
+            PutDataMapRequest putDMR = PutDataMapRequest.create(WeatherWatchFaceConstants.DATASYNC_URI_WEATHER_INFO);
+            putDMR.getDataMap().putByteArray(WeatherWatchFaceConstants.KEY_WEATHER_SNAPSHOT, encodedSnapshot);
+            putDMR.getDataMap().putLong(WeatherWatchFaceConstants.KEY_WEATHER_SEQUENCE, sequence);
+            if (mRequest != null && mRequest.traceId != RefreshTracer.NO_TRACE) {
+                putTrace(putDMR.getDataMap(), run);
+            }
 
-                DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mGoogleApiClient, request).await();
+            PutDataRequest request = putDMR.asPutDataRequest();
 
-                if (result.getStatus().isSuccess()){
-                    Log.d(TAG, String.format("Sent data to watch; Icon: %1s, Temp: %2s",
-                            currently.get(FORECAST_KEY_ICON).asString(), temp));
-                }
-                else {
-                    Log.e(TAG, "Couldn't send data to watch");
-                }
+            DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                    .await(run.remainingMillis(), TimeUnit.MILLISECONDS);
+
+            if (result.getStatus().isSuccess()){
+                mSyncState.markSent(encodedSnapshot, sequence);
+                Log.d(TAG, "Sent data to watch (#" + sequence + "): " + snapshot);
+            }
+            else {
+                Log.e(TAG, "Couldn't send data to watch");
+            }
+        }
+
+        /**
+         * Adds the trace id and the stages so far, the time spent waiting for the pipeline
+         * first. Putting the data item is left out, the watch counts it as delivery.
+         */
+        private void putTrace(DataMap dataMap, TaskPipeline.Run run) {
+            Map<String, Long> stageMillis = run.getStageMillis();
+            String[] names = new String[stageMillis.size() + 1];
+            long[] millis = new long[names.length];
+            names[0] = "queue";
+            millis[0] = mQueueMillis;
+            int i = 1;
+            for (Map.Entry<String, Long> stage : stageMillis.entrySet()) {
+                names[i] = stage.getKey();
+                millis[i] = stage.getValue();
+                i++;
             }
+            dataMap.putLong(WeatherWatchFaceConstants.KEY_TRACE_ID, mRequest.traceId);
+            dataMap.putStringArray(WeatherWatchFaceConstants.KEY_TRACE_STAGES, names);
+            dataMap.putLongArray(WeatherWatchFaceConstants.KEY_TRACE_MILLIS, millis);
         }
     }
 
     private void cancelGetWeatherTask() {
         Log.d(TAG, "cancelGetWeatherTask");
-        if (mGetWeatherTask != null) {
-            mGetWeatherTask.cancel(true);
+        if (mGetWeatherRun != null) {
+            mGetWeatherRun.cancel();
         }
     }
 
@@ -158,9 +301,14 @@ public class WeatherService extends WearableListenerService implements
 
         buildGoogleAPIClient();
 
-        mFio = new ForecastIO(API_KEY);
-        mFio.setUnits(ForecastIO.UNITS_CA);
-        mFio.setExcludeURL(EXCLUDE_URL);
+        mSyncState = new WeatherSyncState(this);
+        mForecastCache = new ForecastCache(this, ForecastCache.DEFAULT_TTL_MILLIS);
+        mLocationTracker = new LocationTracker(this);
+        mWeatherProvider = new ForecastIoProvider(API_KEY, mForecastCache);
+
+        mPipeline = new TaskPipeline(TAG, 1);
+        mCoalescer = new FetchCoalescer<WeatherRequest>(this);
+        mGoogleApiClient.connect();
     }
 
     @Override
@@ -168,21 +316,37 @@ public class WeatherService extends WearableListenerService implements
         Log.d(TAG, "onDestroy");
         cancelGetWeatherTask();
         mGetWeatherDataHandler.removeMessages(MSG_GET_WEATHER);
+        mGetWeatherDataHandler.removeMessages(MSG_GET_WEATHER_FORCE);
+        mPipeline.shutdown();
         if(mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
             mGoogleApiClient.disconnect();
         }
         super.onDestroy();
     }
 
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_LOCATION_MOVED.equals(intent.getAction())) {
+            mLastStartId = startId;
+            requestWeather(false, null);
+            stopIfIdle();
+        }
+        return START_NOT_STICKY;
+    }
+
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
         if (messageEvent.getPath().equals(WeatherWatchFaceConstants.MESSAGE_URI_REQUEST_WEATHER)) {
             Log.d(TAG, "Message path received is: " + messageEvent.getPath());
-            mGetWeatherDataHandler.sendEmptyMessage(MSG_GET_WEATHER);
+            mGetWeatherDataHandler.obtainMessage(MSG_GET_WEATHER, new WeatherRequest(messageEvent)).sendToTarget();
         }
         else if (messageEvent.getPath().equals(WeatherWatchFaceConstants.MESSAGE_URI_REQUEST_WEATHER_FORCE)) {
             Log.d(TAG, "Message path received is: " + messageEvent.getPath());
-            mGetWeatherDataHandler.sendEmptyMessage(MSG_GET_WEATHER_FORCE);
+            mGetWeatherDataHandler.obtainMessage(MSG_GET_WEATHER_FORCE, new WeatherRequest(messageEvent)).sendToTarget();
+        }
+        else if (messageEvent.getPath().equals(WeatherWatchFaceConstants.MESSAGE_URI_METRICS)) {
+            Log.i(TAG, "Watch metrics from " + messageEvent.getSourceNodeId() + ":\n"
+                    + new String(messageEvent.getData(), Charset.forName("UTF-8")));
         }
         else {
             Log.d(TAG, "Wrong message path received: " + messageEvent.getPath());
@@ -191,23 +355,25 @@ public class WeatherService extends WearableListenerService implements
 
     @Override
     public void onConnected(Bundle bundle) {
-        if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-            getLastLocation();
-        }
-    }
-
-    private void getLastLocation() {
-        if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-            Location mLastLocation = LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
-            mLat = String.valueOf(mLastLocation.getLatitude());
-            mLong = String.valueOf(mLastLocation.getLongitude());
-            Log.d(TAG, "Last known location: " + mLat + ", " + mLong);
-        }
+        mLocationTracker.start(mGoogleApiClient);
     }
 
     @Override
     public void onConnectionSuspended(int i) {}
 
+    /**
+     * A weather request from the watch, with its trace id and when it came in.
+     */
+    static class WeatherRequest {
+        final long traceId;
+        final long receivedAt;
+
+        WeatherRequest(MessageEvent messageEvent) {
+            traceId = RefreshTracer.decodeTraceId(messageEvent.getData());
+            receivedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
     @Override
     public void onConnectionFailed(ConnectionResult connectionResult) {}
 }
@@ -0,0 +1,70 @@
+package net.imatruck.weatherwatchface;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the last snapshot put in the Data Layer and its sequence number, and counts
+ * fetches issued and requests joined. Kept in preferences since {@link WeatherService}
+ * doesn't live long between watch requests.
+ */
+class WeatherSyncState {
+
+    private static final String PREFS_NAME = "weather_sync";
+    private static final String PREF_LAST_SNAPSHOT = "last_snapshot";
+    private static final String PREF_LAST_SEQUENCE = "last_sequence";
+    private static final String PREF_ISSUED_FETCHES = "issued_fetches";
+    private static final String PREF_JOINED_REQUESTS = "joined_requests";
+
+    private final SharedPreferences mPrefs;
+
+    WeatherSyncState(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if this encoded snapshot is exactly what was last sent
+     */
+    boolean isLastSent(byte[] encodedSnapshot) {
+        String last = mPrefs.getString(PREF_LAST_SNAPSHOT, null);
+        return last != null && Arrays.equals(Base64.decode(last, Base64.NO_WRAP), encodedSnapshot);
+    }
+
+    /**
+     * Sequence numbers never go backwards. They start from the current time so they keep
+     * increasing even if the app data gets cleared.
+     */
+    long nextSequence() {
+        return Math.max(mPrefs.getLong(PREF_LAST_SEQUENCE, 0) + 1, System.currentTimeMillis());
+    }
+
+    void markSent(byte[] encodedSnapshot, long sequence) {
+        mPrefs.edit()
+                .putString(PREF_LAST_SNAPSHOT, Base64.encodeToString(encodedSnapshot, Base64.NO_WRAP))
+                .putLong(PREF_LAST_SEQUENCE, sequence)
+                .apply();
+    }
+
+    void countIssuedFetch() {
+        increment(PREF_ISSUED_FETCHES);
+    }
+
+    void countJoinedRequest() {
+        increment(PREF_JOINED_REQUESTS);
+    }
+
+    long getIssuedFetchCount() {
+        return mPrefs.getLong(PREF_ISSUED_FETCHES, 0);
+    }
+
+    long getJoinedRequestCount() {
+        return mPrefs.getLong(PREF_JOINED_REQUESTS, 0);
+    }
+
+    private void increment(String counter) {
+        mPrefs.edit().putLong(counter, mPrefs.getLong(counter, 0) + 1).apply();
+    }
+}
@@ -0,0 +1,109 @@
+package net.imatruck.weatherwatchface;
+
+import net.imatruck.weatherwatchface.lib.HttpClient;
+import net.imatruck.weatherwatchface.lib.WeatherCondition;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ForecastCacheTest {
+
+    private static final long TTL = ForecastCache.DEFAULT_TTL_MILLIS;
+    private static final long NOW = 1421323200000L;
+    private static final WeatherSnapshot SNAPSHOT = new WeatherSnapshot(WeatherCondition.RAIN, 10, 8,
+            NOW / 1000 - 6 * 3600, NOW / 1000 + 6 * 3600);
+
+    @Test
+    public void bucketsNearbyCoordinatesTogether() {
+        // Buckets are centered on multiples of 0.1 degrees
+        String toronto = ForecastCache.getBucketKey(43.662, -79.383);
+        assertEquals(toronto, ForecastCache.getBucketKey(43.671, -79.376));
+        assertFalse(toronto.equals(ForecastCache.getBucketKey(43.649, -79.383)));
+        assertFalse(toronto.equals(ForecastCache.getBucketKey(43.662, -79.46)));
+        // Signs are kept apart
+        assertFalse(ForecastCache.getBucketKey(10, 20).equals(ForecastCache.getBucketKey(-10, 20)));
+        assertFalse(ForecastCache.getBucketKey(10, 20).equals(ForecastCache.getBucketKey(10, -20)));
+    }
+
+    @Test
+    public void expiresAtTtl() {
+        ForecastCache cache = new ForecastCache(RuntimeEnvironment.application, TTL);
+        cache.put(43.662, -79.383, SNAPSHOT, NOW);
+
+        assertEquals(SNAPSHOT, cache.get(43.671, -79.376, NOW));
+        assertEquals(SNAPSHOT, cache.get(43.662, -79.383, NOW + TTL - 1));
+        assertNull(cache.get(43.662, -79.383, NOW + TTL));
+        // A clock set back doesn't make the entry fresh again
+        assertNull(cache.get(43.662, -79.383, NOW - 1));
+        assertNull(cache.get(45.5, -73.56, NOW));
+    }
+
+    @Test
+    public void survivesBetweenInstances() {
+        new ForecastCache(RuntimeEnvironment.application, TTL).put(43.662, -79.383, SNAPSHOT, NOW);
+
+        ForecastCache cache = new ForecastCache(RuntimeEnvironment.application, TTL);
+        assertEquals(SNAPSHOT, cache.get(43.662, -79.383, NOW + 1000));
+        assertNull(cache.get(45.5, -73.56, NOW + 1000));
+        ForecastCache counters = new ForecastCache(RuntimeEnvironment.application, TTL);
+        assertEquals(1, counters.getHitCount());
+        assertEquals(1, counters.getMissCount());
+    }
+
+    @Test
+    public void dropsExpiredEntriesOnPut() {
+        ForecastCache cache = new ForecastCache(RuntimeEnvironment.application, TTL);
+        cache.put(43.662, -79.383, SNAPSHOT, NOW);
+        cache.put(45.5, -73.56, SNAPSHOT, NOW + TTL);
+
+        // Expired entries stay expired with a longer TTL, they're gone
+        ForecastCache longer = new ForecastCache(RuntimeEnvironment.application, 10 * TTL);
+        assertNull(longer.get(43.662, -79.383, NOW + TTL));
+        assertEquals(SNAPSHOT, longer.get(45.5, -73.56, NOW + TTL));
+    }
+
+    @Test
+    public void keepsValidatorsPastTtlForRecentBuckets() {
+        String toronto = ForecastCache.getBucketKey(43.662, -79.383);
+        new ForecastCache(RuntimeEnvironment.application, TTL).save(toronto,
+                new HttpClient.Validated<WeatherSnapshot>("\"etag\"", null, SNAPSHOT));
+
+        ForecastCache cache = new ForecastCache(RuntimeEnvironment.application, TTL);
+        HttpClient.Validated<WeatherSnapshot> validated = cache.load(toronto);
+        assertEquals("\"etag\"", validated.getETag());
+        assertNull(validated.getLastModified());
+        assertEquals(SNAPSHOT, validated.getValue());
+
+        // Saving other buckets pushes out the least recently saved
+        for (int i = 1; i <= 4; i++) {
+            cache.save(ForecastCache.getBucketKey(i, i), new HttpClient.Validated<WeatherSnapshot>("\"etag\"", null, SNAPSHOT));
+        }
+        assertNull(cache.load(toronto));
+        assertEquals(SNAPSHOT, cache.load(ForecastCache.getBucketKey(1, 1)).getValue());
+
+        cache.save(ForecastCache.getBucketKey(1, 1), null);
+        assertNull(cache.load(ForecastCache.getBucketKey(1, 1)));
+    }
+
+    @Test
+    public void centersCoordinatesInTheirBucket() {
+        assertEquals("43.7000", String.format(Locale.US, "%.4f", ForecastCache.getBucketCenter(43.651)));
+        assertEquals("43.7000", String.format(Locale.US, "%.4f", ForecastCache.getBucketCenter(43.699)));
+        assertEquals("-79.4000", String.format(Locale.US, "%.4f", ForecastCache.getBucketCenter(-79.383)));
+        // The center is in the same bucket
+        assertEquals(ForecastCache.getBucketKey(43.651, -79.383), ForecastCache.getBucketKey(
+                ForecastCache.getBucketCenter(43.651), ForecastCache.getBucketCenter(-79.383)));
+    }
+}
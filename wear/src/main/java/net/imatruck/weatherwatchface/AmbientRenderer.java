@@ -0,0 +1,166 @@
+package net.imatruck.weatherwatchface;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import net.imatruck.weatherwatchface.lib.ClockText;
+import net.imatruck.weatherwatchface.lib.FaceLayout;
+import net.imatruck.weatherwatchface.lib.WeatherCondition;
+
+/**
+ * Draws the ambient face straight on the screen with its own paints. Only the time, date,
+ * temperature and the outline icon are drawn, on plain black. Antialiasing is off on
+ * low-bit screens, and with burn-in protection the time is drawn as outlines and the whole
+ * face moves by a few pixels every minute. Stale weather is dimmed, or drawn as an outline
+ * on low-bit screens which can't dim.
+ */
+class AmbientRenderer {
+
+    private static final char[] COLON = {':'};
+
+    private static final int SECONDARY_COLOR = 0xFFBBBBBB;
+    private static final float OUTLINE_WIDTH = 1.5f;
+
+    // Positions the face cycles through with burn-in protection, one per minute
+    private static final int[] SHIFT_X = {0, 3, 3, 0, -3, -3, 0, 3};
+    private static final int[] SHIFT_Y = {0, 0, 3, 3, 3, 0, -3, -3};
+
+    private final Paint mHourPaint = new Paint();
+    private final Paint mMinutePaint = new Paint();
+    private final Paint mColonPaint = new Paint();
+    private final Paint mWeekDayPaint = new Paint();
+    private final Paint mDatePaint = new Paint();
+    private final Paint mMonthPaint = new Paint();
+    private final Paint mTempPaint = new Paint();
+    private final Paint mIconPaint = new Paint();
+
+    private FaceLayout mLayout = new FaceLayout();
+    private boolean mLowBit;
+    private boolean mBurnInProtection;
+
+    // Measured once per paint setup or date, not every frame
+    private float mColonLength;
+    private float mSpaceLength;
+    private float mDateLength;
+    private int mMeasuredDay = -1;
+
+    AmbientRenderer() {
+        mHourPaint.setTextAlign(Paint.Align.RIGHT);
+        mMinutePaint.setTextAlign(Paint.Align.LEFT);
+        mColonPaint.setTextAlign(Paint.Align.CENTER);
+
+        mWeekDayPaint.setTextAlign(Paint.Align.RIGHT);
+        mDatePaint.setTextAlign(Paint.Align.CENTER);
+        mMonthPaint.setTextAlign(Paint.Align.LEFT);
+
+        mTempPaint.setTextAlign(Paint.Align.RIGHT);
+        // Filtering would bring back partial alpha on low-bit screens
+        mIconPaint.setFilterBitmap(false);
+
+        setupPaints();
+    }
+
+    /**
+     * Takes the text sizes and positions of the layout, which is read again on every draw.
+     */
+    void setLayout(FaceLayout layout) {
+        mLayout = layout;
+        mHourPaint.setTextSize(layout.getTimeTextSize());
+        mMinutePaint.setTextSize(layout.getTimeTextSize());
+        mColonPaint.setTextSize(layout.getTimeTextSize());
+        mWeekDayPaint.setTextSize(layout.getDateTextSize());
+        mDatePaint.setTextSize(layout.getDateTextSize());
+        mMonthPaint.setTextSize(layout.getDateTextSize());
+        mTempPaint.setTextSize(layout.getTemperatureTextSize());
+        measure();
+    }
+
+    void setLowBit(boolean lowBit) {
+        if (lowBit != mLowBit) {
+            mLowBit = lowBit;
+            setupPaints();
+        }
+    }
+
+    void setBurnInProtection(boolean burnInProtection) {
+        if (burnInProtection != mBurnInProtection) {
+            mBurnInProtection = burnInProtection;
+            setupPaints();
+        }
+    }
+
+    /**
+     * @param icons drawn from with the ambient or low-bit outline of the condition
+     * @param stale true if the weather is out of date
+     */
+    void draw(Canvas canvas, ClockText clockText, int minute, int yearDay, char[] temperatureText,
+              WeatherIconAtlas icons, WeatherCondition condition, boolean stale) {
+        canvas.drawColor(Color.BLACK);
+
+        final int shift = mBurnInProtection ? minute % SHIFT_X.length : 0;
+        final float center_x = mLayout.getCenterX() + SHIFT_X[shift];
+        final float time_y = mLayout.getTimeY() + SHIFT_Y[shift];
+        final float date_y = mLayout.getDateY() + SHIFT_Y[shift];
+        final float temp_y = mLayout.getTemperatureY() + SHIFT_Y[shift];
+
+        char[] hourText = clockText.getHour();
+        char[] minuteText = clockText.getMinute();
+        canvas.drawText(COLON, 0, COLON.length, center_x, time_y, mColonPaint);
+        canvas.drawText(hourText, 0, hourText.length, center_x - mColonLength / 2, time_y, mHourPaint);
+        canvas.drawText(minuteText, 0, minuteText.length, center_x + mColonLength / 2, time_y, mMinutePaint);
+
+        char[] weekDayText = clockText.getWeekDay();
+        char[] dateText = clockText.getMonthDay();
+        char[] monthText = clockText.getMonth();
+        if (yearDay != mMeasuredDay) {
+            mDateLength = mDatePaint.measureText(dateText, 0, dateText.length);
+            mMeasuredDay = yearDay;
+        }
+        canvas.drawText(dateText, 0, dateText.length, center_x, date_y, mDatePaint);
+        canvas.drawText(weekDayText, 0, weekDayText.length, center_x - mDateLength / 2, date_y, mWeekDayPaint);
+        canvas.drawText(monthText, 0, monthText.length, center_x + mDateLength / 2, date_y, mMonthPaint);
+
+        if (mLowBit) {
+            mTempPaint.setStyle(stale ? Paint.Style.STROKE : Paint.Style.FILL);
+        }
+        else {
+            int alpha = stale ? WeatherWatchFaceService.STALE_ALPHA : 255;
+            mTempPaint.setAlpha(alpha);
+            mIconPaint.setAlpha(alpha);
+        }
+        icons.draw(canvas, condition, mLowBit ? WeatherIconAtlas.MODE_LOW_BIT : WeatherIconAtlas.MODE_AMBIENT,
+                center_x + mSpaceLength, temp_y, mIconPaint);
+        canvas.drawText(temperatureText, 0, temperatureText.length, center_x, temp_y, mTempPaint);
+    }
+
+    private void setupPaints() {
+        boolean antiAlias = !mLowBit;
+        // Low-bit screens only have black and white
+        int secondaryColor = mLowBit ? Color.WHITE : SECONDARY_COLOR;
+
+        Paint.Style timeStyle = mBurnInProtection ? Paint.Style.STROKE : Paint.Style.FILL;
+        for (Paint paint : new Paint[]{mHourPaint, mMinutePaint, mColonPaint}) {
+            paint.setColor(Color.WHITE);
+            paint.setAntiAlias(antiAlias);
+            paint.setTypeface(Typeface.DEFAULT);
+            paint.setStyle(timeStyle);
+            paint.setStrokeWidth(OUTLINE_WIDTH);
+        }
+        for (Paint paint : new Paint[]{mWeekDayPaint, mDatePaint, mMonthPaint, mTempPaint}) {
+            paint.setColor(secondaryColor);
+            paint.setAntiAlias(antiAlias);
+            paint.setTypeface(Typeface.DEFAULT);
+        }
+        mTempPaint.setStyle(Paint.Style.FILL);
+        mTempPaint.setStrokeWidth(OUTLINE_WIDTH);
+        measure();
+    }
+
+    private void measure() {
+        mColonLength = mColonPaint.measureText(COLON, 0, COLON.length);
+        mSpaceLength = mTempPaint.measureText(" ");
+        mMeasuredDay = -1;
+    }
+}
@@ -0,0 +1,65 @@
+package net.imatruck.weatherwatchface;
+
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Wearable;
+import com.google.android.gms.wearable.WearableListenerService;
+
+import net.imatruck.weatherwatchface.lib.WeatherWatchFaceConstants;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers metrics requests from the mobile with the report of the running watch face. Play
+ * Services starts this on demand, so it works while the face is hidden and its engine is
+ * disconnected.
+ */
+public class MetricsListenerService extends WearableListenerService {
+
+    private static final String TAG = MetricsListenerService.class.getSimpleName();
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Called on a background thread, blocking is fine.
+     */
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        if (!messageEvent.getPath().equals(WeatherWatchFaceConstants.MESSAGE_URI_REQUEST_METRICS)) {
+            return;
+        }
+        String report = WeatherWatchFaceService.getMetricsReport();
+        if (report == null) {
+            report = "Watch face isn't running";
+        }
+
+        GoogleApiClient client = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult connection = client.blockingConnect(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (!connection.isSuccess()) {
+            Log.e(TAG, "Couldn't connect to Google API: " + connection.getErrorCode());
+            return;
+        }
+        try {
+            MessageApi.SendMessageResult result = Wearable.MessageApi.sendMessage(client,
+                    messageEvent.getSourceNodeId(), WeatherWatchFaceConstants.MESSAGE_URI_METRICS,
+                    report.getBytes(Charset.forName("UTF-8")))
+                    .await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (result.getStatus().isSuccess()) {
+                Log.d(TAG, "Sent metrics to " + messageEvent.getSourceNodeId());
+            }
+            else {
+                Log.e(TAG, "ERROR: failed to send metrics to " + messageEvent.getSourceNodeId());
+            }
+        }
+        finally {
+            client.disconnect();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package net.imatruck.weatherwatchface;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import net.imatruck.weatherwatchface.lib.FaceLayout;
+import net.imatruck.weatherwatchface.lib.IconAtlasLayout;
+import net.imatruck.weatherwatchface.lib.WeatherCondition;
+
+/**
+ * Weather icons for every condition and display mode, drawn from a single bitmap. The atlases
+ * are packed at build time by the wear generateIconAtlas task, one per face size, laid out as
+ * described by {@link IconAtlasLayout}. The one nearest the face size is decoded once on a
+ * background thread, switching icons or modes after that only changes the source rectangle.
+ */
+class WeatherIconAtlas {
+
+    private static final String TAG = WeatherIconAtlas.class.getSimpleName();
+
+    static final int MODE_INTERACTIVE = IconAtlasLayout.ROW_INTERACTIVE;
+    static final int MODE_AMBIENT = IconAtlasLayout.ROW_AMBIENT;
+    static final int MODE_LOW_BIT = IconAtlasLayout.ROW_LOW_BIT;
+
+    // Face sizes the atlases are packed for, smallest first
+    private static final int[] ATLAS_SIZES = IconAtlasLayout.getFaceSizes();
+
+    private static final int MSG_DECODE = 0;
+    private static final int MSG_DECODED = 1;
+
+    interface Callback {
+        void onAtlasReady();
+    }
+
+    private final Resources mResources;
+    private final int[] mAtlasResIds = new int[ATLAS_SIZES.length];
+    private final Callback mCallback;
+
+    private final HandlerThread mDecodeThread;
+    private final Handler mDecodeHandler;
+    private final Handler mMainHandler;
+
+    // Only touched on the main thread
+    private Bitmap mAtlas;
+    private int mAtlasSize;
+    private int mCellWidth;
+    private int mCellHeight;
+    private float mScale = 1f;
+    private int mRequestedIndex = -1;
+    private final Rect mSrcRect = new Rect();
+    private final RectF mDstRect = new RectF();
+
+    WeatherIconAtlas(Context context, Callback callback) {
+        mResources = context.getResources();
+        mCallback = callback;
+        // Generated by generateIconAtlas, so there are no R fields to list them by
+        for (int i = 0; i < ATLAS_SIZES.length; i++) {
+            mAtlasResIds[i] = mResources.getIdentifier(IconAtlasLayout.getResourceName(ATLAS_SIZES[i]),
+                    "drawable", context.getPackageName());
+        }
+
+        mDecodeThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mDecodeThread.start();
+        mDecodeHandler = new Handler(mDecodeThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MSG_DECODE) {
+                    int index = msg.arg1;
+                    Bitmap atlas = decode(mAtlasResIds[index]);
+                    mMainHandler.obtainMessage(MSG_DECODED, index, 0, atlas).sendToTarget();
+                }
+            }
+        };
+        mMainHandler = new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MSG_DECODED) {
+                    onDecoded(msg.arg1, (Bitmap) msg.obj);
+                }
+            }
+        };
+    }
+
+    /**
+     * Picks the atlas packed for the nearest face size at least this big, and decodes it in
+     * the background if it isn't the current one. The current atlas keeps being drawn,
+     * rescaled, until {@link Callback#onAtlasReady} is called.
+     *
+     * @param scale size of the face relative to {@link FaceLayout#REFERENCE_SIZE}
+     */
+    void setScale(float scale) {
+        mScale = scale;
+        int index = getAtlasIndex(scale * FaceLayout.REFERENCE_SIZE);
+        if (index != mRequestedIndex) {
+            mRequestedIndex = index;
+            mDecodeHandler.removeMessages(MSG_DECODE);
+            mDecodeHandler.obtainMessage(MSG_DECODE, index, 0).sendToTarget();
+        }
+    }
+
+    /**
+     * Draws the icon with its bottom left corner at the given point, nothing until the atlas
+     * is decoded.
+     *
+     * @param paint without bitmap filtering for low-bit icons, it would bring back partial alpha
+     */
+    void draw(Canvas canvas, WeatherCondition condition, int mode, float left, float bottom, Paint paint) {
+        if (mAtlas == null) {
+            return;
+        }
+        int x = IconAtlasLayout.getColumn(condition) * (mCellWidth + IconAtlasLayout.GUTTER);
+        int y = mode * (mCellHeight + IconAtlasLayout.GUTTER);
+        mSrcRect.set(x, y, x + mCellWidth, y + mCellHeight);
+
+        float scale = mScale * FaceLayout.REFERENCE_SIZE / mAtlasSize;
+        mDstRect.set(left, bottom - mCellHeight * scale, left + mCellWidth * scale, bottom);
+        canvas.drawBitmap(mAtlas, mSrcRect, mDstRect, paint);
+    }
+
+    void release() {
+        // An atlas still being decoded is recycled when it comes back
+        mRequestedIndex = -1;
+        mDecodeHandler.removeMessages(MSG_DECODE);
+        mMainHandler.removeMessages(MSG_DECODED);
+        mDecodeThread.quitSafely();
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+    }
+
+    private void onDecoded(int index, Bitmap atlas) {
+        if (index != mRequestedIndex) {
+            if (atlas != null) {
+                atlas.recycle();
+            }
+            return;
+        }
+        if (atlas == null) {
+            return;
+        }
+        // Frames are drawn on this thread too, nothing is drawing the old atlas right now
+        if (mAtlas != null) {
+            mAtlas.recycle();
+        }
+        mAtlas = atlas;
+        mAtlasSize = ATLAS_SIZES[index];
+        mCellWidth = atlas.getWidth() / IconAtlasLayout.COLUMNS - IconAtlasLayout.GUTTER;
+        mCellHeight = atlas.getHeight() / IconAtlasLayout.ROWS - IconAtlasLayout.GUTTER;
+        mCallback.onAtlasReady();
+    }
+
+    private Bitmap decode(int resId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap atlas = BitmapFactory.decodeResource(mResources, resId, options);
+        if (atlas == null) {
+            Log.e(TAG, "Couldn't decode icon atlas " + resId);
+        }
+        return atlas;
+    }
+
+    private static int getAtlasIndex(float faceSize) {
+        for (int i = 0; i < ATLAS_SIZES.length; i++) {
+            // Half a pixel short still rounds to the atlas size
+            if (ATLAS_SIZES[i] >= faceSize - 0.5f) {
+                return i;
+            }
+        }
+        return ATLAS_SIZES.length - 1;
+    }
+}
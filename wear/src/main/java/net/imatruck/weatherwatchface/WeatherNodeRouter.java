@@ -0,0 +1,101 @@
+package net.imatruck.weatherwatchface;
+
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks which nodes get weather requests. Once weather has been received the request only
+ * goes to the node that sent it, otherwise it goes to every connected node. Connected nodes
+ * are looked up once and kept until a peer connects or disconnects.
+ * <p>
+ * Node callbacks and requests come from different threads, so everything is synchronized.
+ */
+class WeatherNodeRouter implements NodeApi.NodeListener {
+
+    private static final String TAG = WeatherNodeRouter.class.getSimpleName();
+
+    private String mWeatherNodeId;
+    // Null until looked up, or after a change we didn't follow
+    private List<String> mConnectedNodeIds;
+
+    synchronized void setWeatherNode(String nodeId) {
+        mWeatherNodeId = nodeId;
+    }
+
+    synchronized String getWeatherNode() {
+        return mWeatherNodeId;
+    }
+
+    /**
+     * @return the nodes to send a request to. May block on a node lookup, don't call it
+     * on the main thread.
+     */
+    List<String> getTargets(GoogleApiClient client, long timeoutMillis) {
+        synchronized (this) {
+            if (mWeatherNodeId != null && (mConnectedNodeIds == null || mConnectedNodeIds.contains(mWeatherNodeId))) {
+                return Collections.singletonList(mWeatherNodeId);
+            }
+            if (mConnectedNodeIds != null) {
+                return new ArrayList<String>(mConnectedNodeIds);
+            }
+        }
+
+        NodeApi.GetConnectedNodesResult result = Wearable.NodeApi.getConnectedNodes(client)
+                .await(timeoutMillis, TimeUnit.MILLISECONDS);
+        List<String> nodeIds = new ArrayList<String>();
+        for (Node node : result.getNodes()) {
+            nodeIds.add(node.getId());
+        }
+        Log.d(TAG, "Connected nodes: " + nodeIds);
+        synchronized (this) {
+            if (result.getStatus().isSuccess()) {
+                mConnectedNodeIds = nodeIds;
+            }
+        }
+        return nodeIds;
+    }
+
+    /**
+     * @return true if the weather node was the one that failed, the next targets will be
+     * every connected node
+     */
+    synchronized boolean onSendFailed(String nodeId) {
+        mConnectedNodeIds = null;
+        if (nodeId.equals(mWeatherNodeId)) {
+            Log.d(TAG, "Weather node " + nodeId + " unreachable, falling back to all nodes");
+            mWeatherNodeId = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the connected nodes, for when node changes can't be followed anymore.
+     */
+    synchronized void invalidate() {
+        mConnectedNodeIds = null;
+    }
+
+    @Override
+    public synchronized void onPeerConnected(Node node) {
+        if (mConnectedNodeIds != null && !mConnectedNodeIds.contains(node.getId())) {
+            mConnectedNodeIds.add(node.getId());
+        }
+    }
+
+    @Override
+    public synchronized void onPeerDisconnected(Node node) {
+        if (mConnectedNodeIds != null) {
+            mConnectedNodeIds.remove(node.getId());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package net.imatruck.weatherwatchface;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshotCodec;
+
+/**
+ * Keeps the last snapshot received from the mobile so the watch face can show it right
+ * away after a restart, instead of waiting for the mobile to answer.
+ */
+class WeatherSnapshotStore {
+
+    private static final String TAG = WeatherSnapshotStore.class.getSimpleName();
+
+    private static final String PREFS_NAME = "weather_snapshot";
+    private static final String PREF_SNAPSHOT = "snapshot";
+    private static final String PREF_SEQUENCE = "sequence";
+    private static final String PREF_RECEIVED_AT = "received_at";
+    private static final String PREF_NODE_ID = "node_id";
+
+    private final SharedPreferences mPrefs;
+
+    private WeatherSnapshot mSnapshot;
+    private long mSequence;
+    private long mReceivedAt;
+    private String mNodeId;
+
+    WeatherSnapshotStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if a snapshot was saved before, it's then available from the getters
+     */
+    boolean load() {
+        String encoded = mPrefs.getString(PREF_SNAPSHOT, null);
+        if (encoded == null) {
+            return false;
+        }
+        try {
+            mSnapshot = WeatherSnapshotCodec.decode(Base64.decode(encoded, Base64.NO_WRAP));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Dropping unreadable saved weather", e);
+            mPrefs.edit().clear().apply();
+            return false;
+        }
+        mSequence = mPrefs.getLong(PREF_SEQUENCE, 0);
+        mReceivedAt = mPrefs.getLong(PREF_RECEIVED_AT, 0);
+        mNodeId = mPrefs.getString(PREF_NODE_ID, null);
+        return true;
+    }
+
+    void save(WeatherSnapshot snapshot, long sequence, long receivedAt, String nodeId) {
+        mSnapshot = snapshot;
+        mSequence = sequence;
+        mReceivedAt = receivedAt;
+        mNodeId = nodeId;
+        mPrefs.edit()
+                .putString(PREF_SNAPSHOT, Base64.encodeToString(WeatherSnapshotCodec.encode(snapshot), Base64.NO_WRAP))
+                .putLong(PREF_SEQUENCE, sequence)
+                .putLong(PREF_RECEIVED_AT, receivedAt)
+                .putString(PREF_NODE_ID, nodeId)
+                .apply();
+    }
+
+    WeatherSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * @return when the snapshot was received, in milliseconds
+     */
+    long getReceivedAt() {
+        return mReceivedAt;
+    }
+
+    /**
+     * @return the node the snapshot came from
+     */
+    String getNodeId() {
+        return mNodeId;
+    }
+}
@@ -1,16 +1,16 @@
 package net.imatruck.weatherwatchface;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.Time;
@@ -27,16 +27,58 @@ import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.MessageApi;
-import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
+import net.imatruck.weatherwatchface.lib.AdaptiveRefreshPolicy;
+import net.imatruck.weatherwatchface.lib.ClockText;
+import net.imatruck.weatherwatchface.lib.FaceLayout;
+import net.imatruck.weatherwatchface.lib.RefreshScheduler;
+import net.imatruck.weatherwatchface.lib.RefreshTracer;
+import net.imatruck.weatherwatchface.lib.RenderMetrics;
+import net.imatruck.weatherwatchface.lib.TaskPipeline;
+import net.imatruck.weatherwatchface.lib.WeatherCondition;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshotCodec;
 import net.imatruck.weatherwatchface.lib.WeatherWatchFaceConstants;
 
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
 public class WeatherWatchFaceService extends CanvasWatchFaceService {
 
     private static final String TAG = WeatherWatchFaceService.class.getSimpleName();
 
+    private static final char[] COLON = {':'};
+
+    // Alpha of stale weather, in ambient too
+    static final int STALE_ALPHA = 128;
+
+    // Latest engine created, whose metrics MetricsListenerService reports
+    private static Engine sMetricsEngine;
+
+    /**
+     * @return the render metrics and refresh traces of the running watch face, null if it
+     * isn't running
+     */
+    static synchronized String getMetricsReport() {
+        if (sMetricsEngine == null) {
+            return null;
+        }
+        return sMetricsEngine.mMetrics.report() + "\n" + sMetricsEngine.mTracer.report();
+    }
+
+    private static synchronized void setMetricsEngine(Engine engine) {
+        sMetricsEngine = engine;
+    }
+
+    private static synchronized void clearMetricsEngine(Engine engine) {
+        if (sMetricsEngine == engine) {
+            sMetricsEngine = null;
+        }
+    }
+
     @Override
     public Engine onCreateEngine() {
         /* provide your watch face implementation */
@@ -45,46 +87,30 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
 
     /* implement service callback methods */
     private class Engine extends CanvasWatchFaceService.Engine implements GoogleApiClient.ConnectionCallbacks,
-            DataApi.DataListener, GoogleApiClient.OnConnectionFailedListener {
+            DataApi.DataListener, GoogleApiClient.OnConnectionFailedListener, WeatherIconAtlas.Callback,
+            RefreshScheduler.Host {
 
         private static final int MSG_LOAD_WEATHER = 0;
         private static final int MSG_LOAD_WEATHER_FORCE = 1;
+        private static final int MSG_REFRESH_DUE = 2;
+        private static final int MSG_DAY_NIGHT_CHANGE = 3;
 
-        private static final int COLOR_CLEAR_DAY = 0xFF0288D1;
-        private static final int COLOR_CLEAR_NIGHT = 0xFF1A237E;
-        private static final int COLOR_PARTLY_CLOUDY_DAY = 0xFF78909C;
-        private static final int COLOR_PARTLY_CLOUDY_NIGHT = 0xFF263238;
-        private static final int COLOR_CLOUDY_DAY = 0xFF78909C;
-        private static final int COLOR_CLOUDY_NIGHT = 0xFF455A64;
-        private static final int COLOR_RAIN_DAY = 0xFF757575;
-        private static final int COLOR_RAIN_NIGHT = 0xFF424242;
-        private static final int COLOR_SNOW_SLEET_FOG_DAY = 0xFFBDBDBD;
-        private static final int COLOR_SNOW_SLEET_FOG_NIGHT = 0xFF757575;
-
-        private static final int TIME_INTERVAL_15_MIN = 900000;
-
-        private static final String CONDITION_CLEAR_DAY = "clear-day";
-        private static final String CONDITION_CLEAR_NIGHT = "clear-night";
-        private static final String CONDITION_PARTLY_CLOUDY_DAY = "partly-cloudy-day";
-        private static final String CONDITION_PARTLY_CLOUDY_NIGHT = "partly-cloudy-night";
-        private static final String CONDITION_CLOUDY = "cloudy";
-        private static final String CONDITION_RAIN = "rain";
-        private static final String CONDITION_SNOW = "snow";
-        private static final String CONDITION_SLEET = "sleet";
-        private static final String CONDITION_WIND = "wind";
-        private static final String CONDITION_FOG = "fog";
+        // Weather older than this, with no forecast left to follow, is drawn dimmed
+        private static final long STALE_AFTER_MILLIS = 3600000;
+
+        private static final long REQUEST_TIMEOUT_MILLIS = 10000;
 
         Time mTime;
-        Time mLastRefreshTime;
+        RefreshScheduler mRefreshScheduler;
+        final RenderMetrics mMetrics = new RenderMetrics();
+        final RefreshTracer mTracer = new RefreshTracer(new Random());
 
         boolean mLowBitAmbient;
         boolean mBurnInProtection;
-        boolean mIsRound;
-        int mChinSize;
+        final FaceLayout mLayout = new FaceLayout();
 
         Paint mTempPaint;
         Paint mFeelsLikePaint;
-        Paint mDegreePaint;
         Paint mHourPaint;
         Paint mColonPaint;
         Paint mMinutePaint;
@@ -92,29 +118,62 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
         Paint mDatePaint;
         Paint mMonthPaint;
 
-        String mWeatherCondition = "N/A";
-        String mTemperature = "?";
-        String mFeelsLikeTemp = "?";
+        // Last snapshot received from the mobile, and what it works out to right now
+        WeatherSnapshot mWeather;
+        WeatherSnapshot mShownWeather;
+        long mWeatherSequence;
+        long mWeatherReceivedAt;
+        boolean mWeatherStale;
+        WeatherSnapshotStore mSnapshotStore;
+        final WeatherNodeRouter mNodeRouter = new WeatherNodeRouter();
+        WeatherCondition mWeatherCondition = WeatherCondition.UNKNOWN;
         boolean mIsNight = false;
 
-        Bitmap mWeatherIcon;
+        ClockText mClockText;
+        float mColonLength;
+        float mSpaceLength;
+        char[] mTemperatureText = "?° ".toCharArray();
+        char[] mFeelsLikeText = "?°".toCharArray();
+
+        AmbientRenderer mAmbientRenderer;
+        WeatherIconAtlas mIconAtlas;
+        Paint mWeatherIconPaint;
+
+        // Off-screen layers, only redrawn when marked dirty
+        Bitmap mWeatherLayer;
+        Canvas mWeatherLayerCanvas;
+        boolean mWeatherLayerDirty = true;
 
-        private AsyncTask<Void, Void, Void> mLoadWeatherInfoTask;
+        Bitmap mDateLayer;
+        Canvas mDateLayerCanvas;
+        boolean mDateLayerDirty = true;
+        float mDateLayerTop;
+        float mDateLayerBaseline;
+        int mDateLayerDay = -1;
+
+        private TaskPipeline mPipeline;
+        private TaskPipeline.Run mLoadWeatherInfoRun;
 
         final Handler mLoadWeatherInfoTaskHandler = new Handler() {
             @Override
             public void handleMessage(Message msg) {
-                Log.d(TAG, "mLoadWeatherInfoTaskHandler");
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "mLoadWeatherInfoTaskHandler");
+                }
                 switch (msg.what){
                     case MSG_LOAD_WEATHER:
-                        cancelLoadWeatherInfoTask();
-                        mLoadWeatherInfoTask = new LoadWeatherInfoTask();
-                        mLoadWeatherInfoTask.execute();
+                        loadWeatherInfo(false);
                         break;
                     case MSG_LOAD_WEATHER_FORCE:
-                        cancelLoadWeatherInfoTask();
-                        mLoadWeatherInfoTask = new LoadWeatherInfoTask(true);
-                        mLoadWeatherInfoTask.execute();
+                        loadWeatherInfo(true);
+                        break;
+                    case MSG_REFRESH_DUE:
+                        mRefreshScheduler.onWakeUp();
+                        break;
+                    case MSG_DAY_NIGHT_CHANGE:
+                        mTime.setToNow();
+                        updateShownWeather();
+                        invalidate();
                         break;
                 }
             }
@@ -135,7 +194,10 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
 
             mTime = new Time();
             mTime.setToNow();
-            mLastRefreshTime = new Time();
+            mPipeline = new TaskPipeline(TAG, 1);
+            mRefreshScheduler = new RefreshScheduler(this, RefreshScheduler.SYSTEM_CLOCK, new Random(),
+                    new AdaptiveRefreshPolicy());
+            mRefreshScheduler.setAmbient(isInAmbientMode());
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(WeatherWatchFaceService.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
@@ -151,7 +213,6 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
             mTempPaint.setARGB(255, 255, 255, 255);
             mTempPaint.setStrokeWidth(15.0f);
             mTempPaint.setAntiAlias(true);
-            mTempPaint.setTextSize(35f);
             mTempPaint.setStrokeCap(Paint.Cap.SQUARE);
             mTempPaint.setTextAlign(Paint.Align.RIGHT);
 
@@ -159,15 +220,12 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
             mFeelsLikePaint.setARGB(255, 255, 255, 255);
             mFeelsLikePaint.setTextAlign(Paint.Align.RIGHT);
             mFeelsLikePaint.setAntiAlias(true);
-            mFeelsLikePaint.setTextSize(20f);
-
 
             // Time paints
             mHourPaint = new Paint();
             mHourPaint.setARGB(255, 255, 255, 255);
             mHourPaint.setStrokeWidth(10.0f);
             mHourPaint.setAntiAlias(true);
-            mHourPaint.setTextSize(60f);
             mHourPaint.setStrokeCap(Paint.Cap.ROUND);
             mHourPaint.setTypeface(Typeface.DEFAULT_BOLD);
             mHourPaint.setTextAlign(Paint.Align.RIGHT);
@@ -184,7 +242,6 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
             mWeekDayPaint.setARGB(255, 255, 255, 255);
             mWeekDayPaint.setStrokeWidth(15.0f);
             mWeekDayPaint.setAntiAlias(true);
-            mWeekDayPaint.setTextSize(20f);
             mWeekDayPaint.setStrokeCap(Paint.Cap.ROUND);
             mWeekDayPaint.setTextAlign(Paint.Align.RIGHT);
 
@@ -195,18 +252,50 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
             mDatePaint.setTextAlign(Paint.Align.CENTER);
             mDatePaint.setTypeface(Typeface.DEFAULT_BOLD);
 
+            mClockText = new ClockText(Locale.getDefault());
+
+            mAmbientRenderer = new AmbientRenderer();
 
-            mWeatherIcon = BitmapFactory.decodeResource(getResources(), R.drawable.clear_day);
+            mWeatherIconPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
-            mLoadWeatherInfoTaskHandler.sendEmptyMessage(MSG_LOAD_WEATHER);
+            mIconAtlas = new WeatherIconAtlas(WeatherWatchFaceService.this, this);
+
+            // Show the last weather we had before the first frame
+            mSnapshotStore = new WeatherSnapshotStore(WeatherWatchFaceService.this);
+            if (mSnapshotStore.load()) {
+                mWeather = mSnapshotStore.getSnapshot();
+                mWeatherSequence = mSnapshotStore.getSequence();
+                mWeatherReceivedAt = mSnapshotStore.getReceivedAt();
+                mNodeRouter.setWeatherNode(mSnapshotStore.getNodeId());
+                Log.d(TAG, "Restored weather #" + mWeatherSequence + ": " + mWeather);
+                updateShownWeather();
+                mRefreshScheduler.onWeatherReceived(mWeatherReceivedAt, mWeather);
+            }
+
+            setMetricsEngine(this);
         }
 
         @Override
         public void onDestroy() {
             Log.d(TAG, "onDestroy");
+            clearMetricsEngine(this);
             mLoadWeatherInfoTaskHandler.removeMessages(MSG_LOAD_WEATHER);
+            mLoadWeatherInfoTaskHandler.removeMessages(MSG_LOAD_WEATHER_FORCE);
+            mLoadWeatherInfoTaskHandler.removeMessages(MSG_REFRESH_DUE);
+            mLoadWeatherInfoTaskHandler.removeMessages(MSG_DAY_NIGHT_CHANGE);
             cancelLoadWeatherInfoTask();
+            mPipeline.shutdown();
+            mIconAtlas.release();
+            if (mWeatherLayer != null) {
+                mWeatherLayer.recycle();
+                mWeatherLayer = null;
+            }
+            if (mDateLayer != null) {
+                mDateLayer.recycle();
+                mDateLayer = null;
+            }
             Wearable.DataApi.removeListener(mGoogleApiClient, Engine.this);
+            Wearable.NodeApi.removeListener(mGoogleApiClient, mNodeRouter);
             mGoogleApiClient.disconnect();
             super.onDestroy();
         }
@@ -218,29 +307,63 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
             mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            mAmbientRenderer.setLowBit(mLowBitAmbient);
+            mAmbientRenderer.setBurnInProtection(mBurnInProtection);
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            Log.d(TAG, "onSurfaceChanged");
+            super.onSurfaceChanged(holder, format, width, height);
+            if (mLayout.setSurfaceSize(width, height)) {
+                applyLayout();
+            }
         }
 
         @Override
         public void onApplyWindowInsets(WindowInsets insets){
             super.onApplyWindowInsets(insets);
-            mIsRound = insets.isRound();
-            mChinSize = insets.getSystemWindowInsetBottom();
+            if (mLayout.setInsets(insets.isRound(), insets.getSystemWindowInsetBottom())) {
+                applyLayout();
+            }
+        }
+
+        /**
+         * Sizes the paints and layers for a new layout, the draw calls only read its positions.
+         */
+        private void applyLayout() {
+            if (!mLayout.hasSize()) {
+                return;
+            }
+            mHourPaint.setTextSize(mLayout.getTimeTextSize());
+            mMinutePaint.setTextSize(mLayout.getTimeTextSize());
+            mColonPaint.setTextSize(mLayout.getTimeTextSize());
+            mWeekDayPaint.setTextSize(mLayout.getDateTextSize());
+            mDatePaint.setTextSize(mLayout.getDateTextSize());
+            mMonthPaint.setTextSize(mLayout.getDateTextSize());
+            mTempPaint.setTextSize(mLayout.getTemperatureTextSize());
+            mFeelsLikePaint.setTextSize(mLayout.getFeelsLikeTextSize());
+
+            mColonLength = mColonPaint.measureText(COLON, 0, COLON.length);
+            mSpaceLength = mTempPaint.measureText(" ");
+
+            createLayers(mLayout.getWidth(), mLayout.getHeight());
+            mAmbientRenderer.setLayout(mLayout);
+            mIconAtlas.setScale(mLayout.getScale());
         }
 
         @Override
         public void onTimeTick() {
-            Log.d(TAG, "onTimeTick");
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "onTimeTick");
+            }
             super.onTimeTick();
 
             mTime.setToNow();
-            if (mTime.toMillis(true) - mLastRefreshTime.toMillis(true) >= TIME_INTERVAL_15_MIN) {
-                mLoadWeatherInfoTaskHandler.removeMessages(MSG_LOAD_WEATHER);
-                mLoadWeatherInfoTaskHandler.sendEmptyMessage(MSG_LOAD_WEATHER);
-            }
-            else if (mTemperature.equals("?") || mWeatherCondition.equals("N/A")) {
-                mLoadWeatherInfoTaskHandler.removeMessages(MSG_LOAD_WEATHER_FORCE);
-                mLoadWeatherInfoTaskHandler.sendEmptyMessage(MSG_LOAD_WEATHER_FORCE);
-            }
+            updateShownWeather();
+            // Handler delays don't count time spent asleep in ambient mode, the tick catches
+            // up on a refresh that should have happened meanwhile
+            mRefreshScheduler.onWakeUp();
             invalidate();
         }
 
@@ -248,74 +371,135 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
         public void onAmbientModeChanged(boolean inAmbientMode) {
             Log.d(TAG, "onAmbientModeChanged");
             /* the wearable switched between modes */
-            boolean wasInAmbientMode = isInAmbientMode();
             super.onAmbientModeChanged(inAmbientMode);
-
-            if (inAmbientMode != wasInAmbientMode) {
-                if (mLowBitAmbient) {
-                    mTempPaint.setAntiAlias(!inAmbientMode);
-                    mDegreePaint.setAntiAlias(!inAmbientMode);
-                }
-            }
+            mRefreshScheduler.setAmbient(inAmbientMode);
             invalidate();
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            Log.d(TAG, "onDraw");
+            final long start = System.nanoTime();
+
+            if (isInAmbientMode()) {
+                // Drawn straight on the screen, blitting the full-screen layers would touch every pixel
+                mClockText.setTime(mTime.hour, mTime.minute);
+                mClockText.setDate(mTime.weekDay, mTime.monthDay, mTime.month);
+                mAmbientRenderer.draw(canvas, mClockText, mTime.minute, mTime.yearDay, mTemperatureText,
+                        mIconAtlas, mWeatherCondition, mWeatherStale);
+                mMetrics.recordFrame(System.nanoTime() - start, true);
+                return;
+            }
 
-            final float center_x = canvas.getWidth() / 2;
-            final int canvas_height = canvas.getHeight();
+            if (mLayout.setSurfaceSize(canvas.getWidth(), canvas.getHeight()) || mWeatherLayer == null) {
+                applyLayout();
+            }
 
-            // Draw Background
-            if (isInAmbientMode()){
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawColor(getBackgroundColor());
+            if (mTime.yearDay != mDateLayerDay) {
+                mDateLayerDirty = true;
+            }
+            if (mWeatherLayerDirty) {
+                drawWeatherLayer();
+            }
+            if (mDateLayerDirty) {
+                drawDateLayer();
             }
 
+            // Draw cached background, weather and date
+            canvas.drawBitmap(mWeatherLayer, 0, 0, null);
+            canvas.drawBitmap(mDateLayer, 0, mDateLayerTop, null);
+
             // Draw Time
-            String hourString = mTime.format("%H");
-            String colonString = ":";
-            String minuteString = mTime.format("%M");
+            final float center_x = mLayout.getCenterX();
+            final float time_y = mLayout.getTimeY();
+
+            mClockText.setTime(mTime.hour, mTime.minute);
+            char[] hourText = mClockText.getHour();
+            char[] minuteText = mClockText.getMinute();
+
+            canvas.drawText(COLON, 0, COLON.length, center_x, time_y, mColonPaint);
+            canvas.drawText(hourText, 0, hourText.length, center_x - mColonLength / 2, time_y, mHourPaint);
+            canvas.drawText(minuteText, 0, minuteText.length, center_x + mColonLength / 2, time_y, mMinutePaint);
+
+            mMetrics.recordFrame(System.nanoTime() - start, false);
+        }
 
-            float colonLength = mColonPaint.measureText(colonString);
+        private void createLayers(int width, int height) {
+            if (width <= 0 || height <= 0) {
+                return;
+            }
+            if (mWeatherLayer != null) {
+                mWeatherLayer.recycle();
+            }
+            if (mDateLayer != null) {
+                mDateLayer.recycle();
+            }
 
-            float time_y = canvas_height * 0.25f;
+            mWeatherLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mWeatherLayerCanvas = new Canvas(mWeatherLayer);
 
-            canvas.drawText(colonString, center_x, time_y, mColonPaint);
-            canvas.drawText(hourString, center_x - colonLength / 2, time_y, mHourPaint);
-            canvas.drawText(minuteString, center_x + colonLength / 2, time_y, mMinutePaint);
+            // The date layer is a strip just tall enough for the date text
+            Paint.FontMetrics metrics = mDatePaint.getFontMetrics();
+            int dateLayerHeight = (int) Math.ceil(metrics.bottom - metrics.top);
+            mDateLayerTop = mLayout.getDateY() + metrics.top;
+            mDateLayerBaseline = -metrics.top;
+            mDateLayer = Bitmap.createBitmap(width, dateLayerHeight, Bitmap.Config.ARGB_8888);
+            mDateLayerCanvas = new Canvas(mDateLayer);
 
-            // Draw date
-            String dayOfWeekString = mTime.format("%a ");
-            String dateString = mTime.format("%d");
-            String monthString = mTime.format(" %b");
+            mWeatherLayerDirty = true;
+            mDateLayerDirty = true;
+        }
 
-            float dateLength = mDatePaint.measureText(dateString);
+        private void drawWeatherLayer() {
+            Canvas canvas = mWeatherLayerCanvas;
 
-            float date_y = canvas_height * 0.35f;
+            final float center_x = mLayout.getCenterX();
+            final float temp_y = mLayout.getTemperatureY();
+            final float feelLike_y = mLayout.getFeelsLikeY();
 
-            canvas.drawText(dateString, center_x, date_y, mDatePaint);
-            canvas.drawText(dayOfWeekString, center_x - dateLength / 2, date_y, mWeekDayPaint);
-            canvas.drawText(monthString, center_x + dateLength / 2, date_y, mMonthPaint);
+            // Draw Background
+            canvas.drawColor(mWeatherCondition.getBackgroundColor(mIsNight));
 
             // Draw current weather
-            float temp_y = canvas_height * 0.525f;
-            float feelLike_y = temp_y + canvas_height * 0.075f;
-
-            float spaceLength = mTempPaint.measureText(" ");
+            int alpha = mWeatherStale ? STALE_ALPHA : 255;
+            mTempPaint.setAlpha(alpha);
+            mFeelsLikePaint.setAlpha(alpha);
+            mWeatherIconPaint.setAlpha(alpha);
 
-            canvas.drawBitmap(mWeatherIcon, center_x + spaceLength, temp_y - mWeatherIcon.getHeight(), mTempPaint);
+            mIconAtlas.draw(canvas, mWeatherCondition, WeatherIconAtlas.MODE_INTERACTIVE,
+                    center_x + mSpaceLength, temp_y, mWeatherIconPaint);
 
-            canvas.drawText(mTemperature + "° ", center_x, temp_y, mTempPaint);
+            canvas.drawText(mTemperatureText, 0, mTemperatureText.length, center_x, temp_y, mTempPaint);
 
-            if (!mFeelsLikeTemp.equals(mTemperature)) {
-                canvas.drawText(mFeelsLikeTemp + "°", center_x - spaceLength, feelLike_y, mFeelsLikePaint);
+            if (mShownWeather != null && mShownWeather.getFeelsLike() != mShownWeather.getTemperature()) {
+                canvas.drawText(mFeelsLikeText, 0, mFeelsLikeText.length,
+                        center_x - mSpaceLength, feelLike_y, mFeelsLikePaint);
             }
 
-            Log.d(TAG, "onDraw Done");
+            mWeatherLayerDirty = false;
+        }
+
+        private void drawDateLayer() {
+            Canvas canvas = mDateLayerCanvas;
+
+            final float center_x = mLayout.getCenterX();
+            final float date_y = mDateLayerBaseline;
+
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+            mClockText.setLocale(Locale.getDefault());
+            mClockText.setDate(mTime.weekDay, mTime.monthDay, mTime.month);
+            char[] weekDayText = mClockText.getWeekDay();
+            char[] dateText = mClockText.getMonthDay();
+            char[] monthText = mClockText.getMonth();
 
+            float dateLength = mDatePaint.measureText(dateText, 0, dateText.length);
+
+            canvas.drawText(dateText, 0, dateText.length, center_x, date_y, mDatePaint);
+            canvas.drawText(weekDayText, 0, weekDayText.length, center_x - dateLength / 2, date_y, mWeekDayPaint);
+            canvas.drawText(monthText, 0, monthText.length, center_x + dateLength / 2, date_y, mMonthPaint);
+
+            mDateLayerDay = mTime.yearDay;
+            mDateLayerDirty = false;
         }
 
         @Override
@@ -323,6 +507,7 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
             Log.d(TAG, "onVisibilityChanged");
             /* the watch face became visible or invisible */
             super.onVisibilityChanged(visible);
+            mRefreshScheduler.setVisible(visible);
             if (visible) {
                 mGoogleApiClient.connect();
                 invalidate();
@@ -330,21 +515,38 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
             else {
                 if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
                     Wearable.DataApi.removeListener(mGoogleApiClient, Engine.this);
+                    Wearable.NodeApi.removeListener(mGoogleApiClient, mNodeRouter);
                     mGoogleApiClient.disconnect();
                 }
+                // Node changes aren't followed while disconnected
+                mNodeRouter.invalidate();
             }
         }
 
+        private void loadWeatherInfo(boolean force) {
+            mMetrics.onRefreshRequested();
+            long traceId = mTracer.start(SystemClock.elapsedRealtime());
+            TaskPipeline.Run run = mPipeline.submit(new LoadWeatherInfoTask(force, traceId), REQUEST_TIMEOUT_MILLIS);
+            if (run == null) {
+                // Keep the run in flight, so it can still be cancelled
+                Log.e(TAG, "Request pipeline is full, dropping request");
+                mRefreshScheduler.onRequestDone(false);
+                return;
+            }
+            mLoadWeatherInfoRun = run;
+        }
+
         private void cancelLoadWeatherInfoTask() {
             Log.d(TAG, "cancelLoadWeatherInfoTask");
-            if (mLoadWeatherInfoTask != null) {
-                mLoadWeatherInfoTask.cancel(true);
+            if (mLoadWeatherInfoRun != null) {
+                mLoadWeatherInfoRun.cancel();
             }
         }
 
         @Override
         public void onConnected(Bundle bundle) {
             Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
+            Wearable.NodeApi.addListener(mGoogleApiClient, mNodeRouter);
         }
 
         @Override
@@ -361,145 +563,194 @@ public class WeatherWatchFaceService extends CanvasWatchFaceService {
                     String path = event.getDataItem().getUri().getPath();
                     if (path.equals(WeatherWatchFaceConstants.DATASYNC_URI_WEATHER_INFO)) {
                         dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
-                        String icon = dataMap.getString(WeatherWatchFaceConstants.KEY_WEATHER_ICON);
-                        String temp = dataMap.getString(WeatherWatchFaceConstants.KEY_WEATHER_TEMP);
-                        String feelsLike = dataMap.getString(WeatherWatchFaceConstants.KEY_WEATHER_FEELSLIKE, temp);
-                        long sunsetTime = dataMap.getLong(WeatherWatchFaceConstants.KEY_WEATHER_SUNSET, -1);
-                        long sunriseTime = dataMap.getLong(WeatherWatchFaceConstants.KEY_WEATHER_SUNRISE, -1);
-
-                        Log.d(TAG, "Received weather from mobile: " + icon + ", " + temp);
-                        if (!mWeatherCondition.equals(icon)) {
-                            mWeatherCondition = icon;
-                            mWeatherIcon = BitmapFactory.decodeResource(getResources(), getWeatherIconResourceId());
+                        long sequence = dataMap.getLong(WeatherWatchFaceConstants.KEY_WEATHER_SEQUENCE, 0);
+                        if (sequence <= mWeatherSequence) {
+                            Log.d(TAG, "Ignoring stale weather #" + sequence + ", have #" + mWeatherSequence);
+                            continue;
+                        }
+
+                        WeatherSnapshot snapshot;
+                        try {
+                            snapshot = WeatherSnapshotCodec.decode(
+                                    dataMap.getByteArray(WeatherWatchFaceConstants.KEY_WEATHER_SNAPSHOT));
+                        } catch (IllegalArgumentException e) {
+                            Log.e(TAG, "Couldn't read weather from mobile", e);
+                            continue;
                         }
-                        mTemperature = temp;
-                        mFeelsLikeTemp = feelsLike;
-                        long currentTime = mTime.toMillis(false) / 1000;
-                        mIsNight = currentTime < sunriseTime || currentTime > sunsetTime;
-                        Log.d(TAG, String.format("It is currently: %1s", (mIsNight) ? "Night" : "Day"));
+
+                        Log.d(TAG, "Received weather #" + sequence + " from mobile: " + snapshot);
+                        long traceId = dataMap.getLong(WeatherWatchFaceConstants.KEY_TRACE_ID, RefreshTracer.NO_TRACE);
+                        mTracer.onAnswered(traceId, SystemClock.elapsedRealtime(),
+                                dataMap.getStringArray(WeatherWatchFaceConstants.KEY_TRACE_STAGES),
+                                dataMap.getLongArray(WeatherWatchFaceConstants.KEY_TRACE_MILLIS));
+                        mWeatherSequence = sequence;
+                        mWeatherReceivedAt = System.currentTimeMillis();
+                        mWeather = snapshot;
+                        String nodeId = event.getDataItem().getUri().getHost();
+                        mNodeRouter.setWeatherNode(nodeId);
+                        mSnapshotStore.save(snapshot, sequence, mWeatherReceivedAt, nodeId);
+                        mRefreshScheduler.onWeatherReceived(mWeatherReceivedAt, snapshot);
+                        mShownWeather = null;
+                        updateShownWeather();
                         invalidate();
                     }
                 }
             }
         }
 
-        private int getWeatherIconResourceId() {
-            if (CONDITION_CLEAR_DAY.equals(mWeatherCondition)) {
-                return R.drawable.clear_day;
-            }
-            if (CONDITION_CLEAR_NIGHT.equals(mWeatherCondition)) {
-                return R.drawable.clear_night;
-            }
-            if (CONDITION_PARTLY_CLOUDY_DAY.equals(mWeatherCondition)) {
-                return R.drawable.partly_cloudy_day;
-            }
-            if (CONDITION_PARTLY_CLOUDY_NIGHT.equals(mWeatherCondition)) {
-                return R.drawable.partly_cloudy_night;
+        /**
+         * Moves the displayed weather along the forecast timeline. The weather layer is only
+         * marked dirty when something visible actually changed.
+         */
+        private void updateShownWeather() {
+            if (mWeather == null) {
+                return;
             }
-            if (CONDITION_CLOUDY.equals(mWeatherCondition)) {
-                return R.drawable.cloudy;
+            long currentTime = mTime.toMillis(false) / 1000;
+            WeatherSnapshot shown = mWeather.at(currentTime);
+            boolean isNight = mWeather.isNight(currentTime);
+            boolean isStale = isWeatherStale(currentTime);
+            if (shown.equals(mShownWeather) && isNight == mIsNight && isStale == mWeatherStale) {
+                return;
             }
-            if (CONDITION_RAIN.equals(mWeatherCondition)) {
-                return R.drawable.rain;
-            }
-            if (CONDITION_SNOW.equals(mWeatherCondition)) {
-                return R.drawable.snow;
-            }
-            if (CONDITION_SLEET.equals(mWeatherCondition)) {
-                return R.drawable.sleet;
+
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Showing weather " + shown);
             }
-            if (CONDITION_WIND.equals(mWeatherCondition)) {
-                return R.drawable.wind;
+            mShownWeather = shown;
+            mWeatherCondition = shown.getCondition();
+            mTemperatureText = (shown.getTemperature() + "° ").toCharArray();
+            mFeelsLikeText = (shown.getFeelsLike() + "°").toCharArray();
+            mIsNight = isNight;
+            mWeatherStale = isStale;
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, String.format("It is currently: %1s", (mIsNight) ? "Night" : "Day"));
             }
-            if (CONDITION_FOG.equals(mWeatherCondition)) {
-                return R.drawable.fog;
+            scheduleDayNightChange(currentTime);
+            mWeatherLayerDirty = true;
+        }
+
+        /**
+         * Switches the background right at sunrise or sunset instead of on the next tick.
+         * Handler delays stop while asleep in ambient mode, the tick catches up then.
+         */
+        private void scheduleDayNightChange(long currentTime) {
+            mLoadWeatherInfoTaskHandler.removeMessages(MSG_DAY_NIGHT_CHANGE);
+            long change = mWeather.getNextDayNightChange(currentTime);
+            if (change != WeatherSnapshot.SUN_TIME_UNKNOWN) {
+                mLoadWeatherInfoTaskHandler.sendEmptyMessageDelayed(MSG_DAY_NIGHT_CHANGE,
+                        change * 1000 - System.currentTimeMillis());
             }
+        }
 
-            return R.drawable.clear_day;
+        private boolean isWeatherStale(long currentTime) {
+            return currentTime * 1000 - mWeatherReceivedAt > STALE_AFTER_MILLIS
+                    && !mWeather.isCoveredUntil(currentTime);
         }
 
-        private int getBackgroundColor() {
-            if (CONDITION_CLEAR_DAY.equals(mWeatherCondition)) {
-                return COLOR_CLEAR_DAY;
-            }
-            if (CONDITION_CLEAR_NIGHT.equals(mWeatherCondition)) {
-                return COLOR_CLEAR_NIGHT;
-            }
-            if (CONDITION_PARTLY_CLOUDY_DAY.equals(mWeatherCondition)) {
-                return COLOR_PARTLY_CLOUDY_DAY;
-            }
-            if (CONDITION_PARTLY_CLOUDY_NIGHT.equals(mWeatherCondition)) {
-                return COLOR_PARTLY_CLOUDY_NIGHT;
-            }
-            if (!mIsNight) {
-                if (CONDITION_CLOUDY.equals(mWeatherCondition)) {
-                    return COLOR_CLOUDY_DAY;
-                }
-                if (CONDITION_RAIN.equals(mWeatherCondition)) {
-                    return COLOR_RAIN_DAY;
-                }
-                if (CONDITION_SNOW.equals(mWeatherCondition) || CONDITION_FOG.equals(mWeatherCondition)
-                        || CONDITION_SLEET.equals(mWeatherCondition)) {
-                    return COLOR_SNOW_SLEET_FOG_DAY;
-                }
-                if (CONDITION_WIND.equals(mWeatherCondition)) {
-                    return COLOR_CLEAR_DAY;
-                }
-            } else {
-                if (CONDITION_CLOUDY.equals(mWeatherCondition)) {
-                    return COLOR_CLOUDY_NIGHT;
-                }
-                if (CONDITION_RAIN.equals(mWeatherCondition)) {
-                    return COLOR_RAIN_NIGHT;
-                }
-                if (CONDITION_SNOW.equals(mWeatherCondition) || CONDITION_FOG.equals(mWeatherCondition)
-                        || CONDITION_SLEET.equals(mWeatherCondition)) {
-                    return COLOR_SNOW_SLEET_FOG_NIGHT;
-                }
-                if (CONDITION_WIND.equals(mWeatherCondition)) {
-                    return COLOR_CLEAR_NIGHT;
-                }
-            }
+        @Override
+        public void requestRefresh(boolean force) {
+            mLoadWeatherInfoTaskHandler.sendEmptyMessage(force ? MSG_LOAD_WEATHER_FORCE : MSG_LOAD_WEATHER);
+        }
 
-            return COLOR_CLEAR_DAY;
+        @Override
+        public void scheduleWakeUp(long delayMillis) {
+            mLoadWeatherInfoTaskHandler.removeMessages(MSG_REFRESH_DUE);
+            mLoadWeatherInfoTaskHandler.sendEmptyMessageDelayed(MSG_REFRESH_DUE, delayMillis);
         }
 
         @Override
-        public void onConnectionFailed(ConnectionResult connectionResult) {
+        public void cancelWakeUp() {
+            mLoadWeatherInfoTaskHandler.removeMessages(MSG_REFRESH_DUE);
+        }
 
+        @Override
+        public void onAtlasReady() {
+            mMetrics.onIconDecoded();
+            mWeatherLayerDirty = true;
+            invalidate();
         }
 
-        private class LoadWeatherInfoTask extends AsyncTask<Void, Void, Void> {
+        @Override
+        public void onConnectionFailed(ConnectionResult connectionResult) {
 
-            boolean mForceRefresh = false;
+        }
 
-            public LoadWeatherInfoTask() {}
+        /**
+         * Asks the mobile for weather, in two stages: connect, then send to the weather node.
+         */
+        private class LoadWeatherInfoTask extends TaskPipeline.Job {
 
-            public LoadWeatherInfoTask(boolean forceRefresh) {
+            final boolean mForceRefresh;
+            final long mTraceId;
+            // Read on the main thread once the task is finished
+            volatile boolean mSent;
+
+            public LoadWeatherInfoTask(boolean forceRefresh, long traceId) {
                 this.mForceRefresh = forceRefresh;
+                this.mTraceId = traceId;
             }
 
             @Override
-            protected Void doInBackground(Void... params) {
+            protected void run(TaskPipeline.Run run) throws IOException {
                 Log.d(TAG, "LoadWeatherInfoTask");
 
+                run.stage("connect");
+                if (!mGoogleApiClient.isConnected()) {
+                    ConnectionResult result = mGoogleApiClient.blockingConnect(run.remainingMillis(), TimeUnit.MILLISECONDS);
+                    if (!result.isSuccess()) {
+                        throw new IOException("Couldn't connect to Google API: " + result.getErrorCode());
+                    }
+                }
+
+                run.stage("send");
                 String messagePath = (mForceRefresh) ?
                         WeatherWatchFaceConstants.MESSAGE_URI_REQUEST_WEATHER_FORCE :
                         WeatherWatchFaceConstants.MESSAGE_URI_REQUEST_WEATHER;
 
-                NodeApi.GetConnectedNodesResult nodes = Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).await();
-                for (Node node : nodes.getNodes()) {
-                    MessageApi.SendMessageResult result = Wearable.MessageApi.sendMessage(
-                            mGoogleApiClient, node.getId(), messagePath, "".getBytes()).await();
-                    if (result.getStatus().isSuccess()) {
-                        Log.d(TAG, "Request Weather message (" + messagePath + ") sent to: " + node.getDisplayName());
-                        mLastRefreshTime.setToNow();
+                boolean sent = false;
+                boolean fallBack = false;
+                for (String nodeId : mNodeRouter.getTargets(mGoogleApiClient, run.remainingMillis())) {
+                    if (sendRequest(nodeId, messagePath, run)) {
+                        sent = true;
+                    } else {
+                        fallBack |= mNodeRouter.onSendFailed(nodeId);
                     }
-                    else {
-                        Log.e(TAG, "ERROR: failed to send Message");
+                }
+                if (!sent && fallBack) {
+                    for (String nodeId : mNodeRouter.getTargets(mGoogleApiClient, run.remainingMillis())) {
+                        sent |= sendRequest(nodeId, messagePath, run);
                     }
                 }
-                return null;
+                mSent = sent;
+            }
+
+            private boolean sendRequest(String nodeId, String messagePath, TaskPipeline.Run run) {
+                MessageApi.SendMessageResult result = Wearable.MessageApi.sendMessage(
+                        mGoogleApiClient, nodeId, messagePath, RefreshTracer.encodeTraceId(mTraceId))
+                        .await(run.remainingMillis(), TimeUnit.MILLISECONDS);
+                if (result.getStatus().isSuccess()) {
+                    Log.d(TAG, "Request Weather message (" + messagePath + ") sent to: " + nodeId);
+                    return true;
+                }
+                Log.e(TAG, "ERROR: failed to send Message to " + nodeId);
+                return false;
+            }
+
+            @Override
+            protected void onFinished(TaskPipeline.Run run) {
+                Log.d(TAG, "LoadWeatherInfoTask " + run.getOutcome() + ": " + run.getTimings());
+                if (mSent) {
+                    mTracer.onSent(mTraceId, SystemClock.elapsedRealtime(), run.getStageMillis());
+                }
+                if (run.getOutcome() != TaskPipeline.Outcome.CANCELLED) {
+                    mLoadWeatherInfoTaskHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mRefreshScheduler.onRequestDone(mSent);
+                        }
+                    });
+                }
             }
         }
     }
@@ -0,0 +1,82 @@
+package net.imatruck.weatherwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Canvas of a given size that only counts what is drawn on it, so frames can be measured
+ * without a screen and without the cost of actual drawing.
+ */
+class RecordingCanvas extends Canvas {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    int mTextCount;
+    int mBitmapCount;
+    int mColorCount;
+
+    RecordingCanvas(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    void reset() {
+        mTextCount = 0;
+        mBitmapCount = 0;
+        mColorCount = 0;
+    }
+
+    int getDrawCount() {
+        return mTextCount + mBitmapCount + mColorCount;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        mTextCount++;
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+        mTextCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        mBitmapCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        mBitmapCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        mBitmapCount++;
+    }
+
+    @Override
+    public void drawColor(int color) {
+        mColorCount++;
+    }
+
+    @Override
+    public void drawColor(int color, PorterDuff.Mode mode) {
+        mColorCount++;
+    }
+}
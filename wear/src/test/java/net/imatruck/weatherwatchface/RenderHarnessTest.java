@@ -0,0 +1,233 @@
+package net.imatruck.weatherwatchface;
+
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.support.wearable.watchface.CanvasWatchFaceService;
+import android.support.wearable.watchface.WatchFaceService;
+import android.view.SurfaceHolder;
+import android.view.WindowInsets;
+
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemAsset;
+import com.google.android.gms.wearable.PutDataMapRequest;
+
+import net.imatruck.weatherwatchface.lib.LatencyHistogram;
+import net.imatruck.weatherwatchface.lib.WeatherCondition;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshot;
+import net.imatruck.weatherwatchface.lib.WeatherSnapshotCodec;
+import net.imatruck.weatherwatchface.lib.WeatherWatchFaceConstants;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the watch face engine through its lifecycle off-device and draws thousands of
+ * frames on a {@link RecordingCanvas}, printing draw calls, allocations and time per frame
+ * for interactive and ambient mode. Times are only comparable between runs on the same
+ * machine, Robolectric's instrumentation adds to them.
+ * <p>
+ * Run with {@code ./gradlew :wear:testDebug}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class RenderHarnessTest {
+
+    private static final int WARMUP_FRAMES = 500;
+    private static final int FRAMES = 5000;
+    // Frames between two minute ticks, so the time text keeps changing
+    private static final int FRAMES_PER_TICK = 100;
+    private static final long ATLAS_TIMEOUT_MILLIS = 5000;
+
+    // Private ambient flag of the support library's WatchFaceService.Engine
+    private static final String AMBIENT_MODE_FIELD = "mInAmbientMode";
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void squareSurface() throws Exception {
+        measure("square 280x280", 280, 280, false, 0);
+    }
+
+    @Test
+    public void roundSurfaceWithChin() throws Exception {
+        measure("round 320x320, chin 30", 320, 320, true, 30);
+    }
+
+    private void measure(String surface, int width, int height, boolean isRound, int chinSize) throws Exception {
+        WeatherWatchFaceService service = Robolectric.setupService(WeatherWatchFaceService.class);
+        CanvasWatchFaceService.Engine engine = service.onCreateEngine();
+        SurfaceHolder holder = mock(SurfaceHolder.class);
+
+        engine.onCreate(holder);
+        engine.onApplyWindowInsets(createInsets(isRound, chinSize));
+        engine.onSurfaceChanged(holder, PixelFormat.RGBA_8888, width, height);
+        ((DataApi.DataListener) engine).onDataChanged(createWeatherEvents());
+        engine.onTimeTick();
+        ShadowLooper.runUiThreadTasks();
+        awaitIconAtlas(engine, width, height);
+
+        // Time and weather text, the weather and date layers
+        RecordingCanvas canvas = new RecordingCanvas(width, height);
+        Frames interactive = drawFrames(engine, canvas);
+        assertPerFrame("interactive text", 3, canvas.mTextCount);
+        assertPerFrame("interactive bitmaps", 2, canvas.mBitmapCount);
+        assertPerFrame("interactive fills", 0, canvas.mColorCount);
+
+        // Time, date and temperature text, the icon and the black background
+        setAmbient(engine, true);
+        engine.onAmbientModeChanged(true);
+        ShadowLooper.runUiThreadTasks();
+        Frames ambient = drawFrames(engine, canvas);
+        assertPerFrame("ambient text", 7, canvas.mTextCount);
+        assertPerFrame("ambient bitmaps", 1, canvas.mBitmapCount);
+        assertPerFrame("ambient fills", 1, canvas.mColorCount);
+
+        System.out.println(surface + "\n  interactive: " + interactive + "\n  ambient:     " + ambient);
+        engine.onDestroy();
+    }
+
+    /**
+     * Fails unless every frame made exactly the expected number of calls, drawing less can
+     * mean an early return as much as drawing more means a regression.
+     */
+    private static void assertPerFrame(String name, int expected, int count) {
+        assertTrue(String.format(Locale.US, "%s per frame: %.2f, expected %d", name, count / (float) FRAMES, expected),
+                count == expected * FRAMES);
+    }
+
+    /**
+     * The icon atlas is decoded on a background thread, waits until ambient frames draw the
+     * icon so it's in every frame measured.
+     */
+    private static void awaitIconAtlas(CanvasWatchFaceService.Engine engine, int width, int height)
+            throws Exception {
+        setAmbient(engine, true);
+        engine.onAmbientModeChanged(true);
+        RecordingCanvas canvas = new RecordingCanvas(width, height);
+        Rect bounds = new Rect(0, 0, width, height);
+        long deadline = System.currentTimeMillis() + ATLAS_TIMEOUT_MILLIS;
+        do {
+            Robolectric.flushBackgroundThreadScheduler();
+            ShadowLooper.runUiThreadTasks();
+            canvas.reset();
+            engine.onDraw(canvas, bounds);
+            if (canvas.mBitmapCount > 0) {
+                break;
+            }
+            Thread.sleep(10);
+        } while (System.currentTimeMillis() < deadline);
+        assertTrue("Icon atlas not decoded within " + ATLAS_TIMEOUT_MILLIS + "ms", canvas.mBitmapCount > 0);
+
+        setAmbient(engine, false);
+        engine.onAmbientModeChanged(false);
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    private static Frames drawFrames(CanvasWatchFaceService.Engine engine, RecordingCanvas canvas) {
+        Rect bounds = new Rect(0, 0, canvas.getWidth(), canvas.getHeight());
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            engine.onDraw(canvas, bounds);
+        }
+        canvas.reset();
+
+        Frames frames = new Frames();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < FRAMES; i++) {
+            if (i % FRAMES_PER_TICK == 0) {
+                engine.onTimeTick();
+            }
+            long start = System.nanoTime();
+            engine.onDraw(canvas, bounds);
+            frames.mTimes.record((System.nanoTime() - start) / 1000);
+        }
+        // Includes the ticks and the histogram, both are allocation-free
+        frames.mAllocatedBytes = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        frames.mDrawCalls = canvas.getDrawCount();
+        return frames;
+    }
+
+    private static DataEventBuffer createWeatherEvents() {
+        long now = System.currentTimeMillis() / 1000;
+        WeatherSnapshot snapshot = new WeatherSnapshot(WeatherCondition.RAIN, 12, 9, now - 6 * 3600, now + 6 * 3600);
+        PutDataMapRequest request = PutDataMapRequest.create(WeatherWatchFaceConstants.DATASYNC_URI_WEATHER_INFO);
+        request.getDataMap().putByteArray(WeatherWatchFaceConstants.KEY_WEATHER_SNAPSHOT,
+                WeatherSnapshotCodec.encode(snapshot));
+        request.getDataMap().putLong(WeatherWatchFaceConstants.KEY_WEATHER_SEQUENCE, 1);
+
+        DataItem item = mock(DataItem.class);
+        when(item.getUri()).thenReturn(Uri.parse("wear://phone" + WeatherWatchFaceConstants.DATASYNC_URI_WEATHER_INFO));
+        when(item.getData()).thenReturn(request.asPutDataRequest().getData());
+        when(item.getAssets()).thenReturn(Collections.<String, DataItemAsset>emptyMap());
+        when(item.freeze()).thenReturn(item);
+
+        DataEvent event = mock(DataEvent.class);
+        when(event.getType()).thenReturn(DataEvent.TYPE_CHANGED);
+        when(event.getDataItem()).thenReturn(item);
+
+        DataEventBuffer events = mock(DataEventBuffer.class);
+        when(events.iterator()).thenReturn(Collections.singletonList(event).iterator());
+        return events;
+    }
+
+    private static WindowInsets createInsets(boolean isRound, int chinSize) {
+        // The constructors are hidden, Robolectric drops the final modifier so it can be mocked
+        WindowInsets insets = mock(WindowInsets.class);
+        when(insets.isRound()).thenReturn(isRound);
+        when(insets.getSystemWindowInsetBottom()).thenReturn(chinSize);
+        return insets;
+    }
+
+    /**
+     * Ambient mode is normally set by the system before onAmbientModeChanged is called, the
+     * flag is private to the support library, whose version is pinned in wear/build.gradle.
+     */
+    private static void setAmbient(CanvasWatchFaceService.Engine engine, boolean ambient) throws Exception {
+        Field field;
+        try {
+            field = WatchFaceService.Engine.class.getDeclaredField(AMBIENT_MODE_FIELD);
+        }
+        catch (NoSuchFieldException e) {
+            throw new AssertionError("WatchFaceService.Engine has no " + AMBIENT_MODE_FIELD
+                    + " field, update it for the wearable support library version in wear/build.gradle");
+        }
+        if (field.getType() != boolean.class) {
+            throw new AssertionError("WatchFaceService.Engine." + AMBIENT_MODE_FIELD + " isn't a boolean, update it"
+                    + " for the wearable support library version in wear/build.gradle");
+        }
+        field.setAccessible(true);
+        field.setBoolean(engine, ambient);
+    }
+
+    private static class Frames {
+
+        final LatencyHistogram mTimes = new LatencyHistogram();
+        long mAllocatedBytes;
+        int mDrawCalls;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d frames, %.1f draw calls, %d bytes allocated per frame, p50 %dus, p99 %dus",
+                    FRAMES, mDrawCalls / (float) FRAMES, mAllocatedBytes / FRAMES,
+                    mTimes.getValueAtPercentile(50), mTimes.getValueAtPercentile(99));
+        }
+    }
+}
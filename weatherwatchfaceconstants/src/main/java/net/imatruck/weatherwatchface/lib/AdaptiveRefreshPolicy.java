@@ -0,0 +1,99 @@
+package net.imatruck.weatherwatchface.lib;
+
+/**
+ * Stretches the refresh interval when fresh weather is unlikely to matter: the last few
+ * snapshots barely changed, it's night and dawn isn't close, or nobody looked at the face
+ * for a while. The result stays within hard bounds, and never goes past what the forecast
+ * covers, or the point where the face dims stale weather.
+ * <p>
+ * Changing weather keeps the base interval rather than shortening it: refreshes in ambient
+ * mode then land just before glances, which would otherwise refresh on their own.
+ */
+public class AdaptiveRefreshPolicy implements RefreshScheduler.Policy {
+
+    public static final long MIN_INTERVAL_MILLIS = 10 * 60 * 1000;
+    // The face dims weather older than an hour that has no forecast left to follow
+    public static final long MAX_UNCOVERED_INTERVAL_MILLIS = 60 * 60 * 1000;
+    public static final long MAX_INTERVAL_MILLIS = 4 * 60 * 60 * 1000;
+
+    // Only snapshots received this recently say something about the weather now
+    private static final long VOLATILITY_WINDOW_MILLIS = 3 * 60 * 60 * 1000;
+    private static final int HISTORY_SIZE = 4;
+    private static final int STABLE_TEMPERATURE_RANGE = 1;
+
+    private static final long DAWN_MILLIS = 60 * 60 * 1000;
+    private static final long LONG_UNSEEN_MILLIS = 60 * 60 * 1000;
+    private static final long VERY_LONG_UNSEEN_MILLIS = 4 * 60 * 60 * 1000;
+
+    // Ring of the last snapshots received
+    private final long[] mReceivedAt = new long[HISTORY_SIZE];
+    private final int[] mTemperatures = new int[HISTORY_SIZE];
+    private final WeatherCondition[] mConditions = new WeatherCondition[HISTORY_SIZE];
+    private int mCount;
+    private WeatherSnapshot mLatest;
+
+    @Override
+    public void onWeatherReceived(long receivedAt, WeatherSnapshot snapshot) {
+        int slot = mCount % HISTORY_SIZE;
+        mReceivedAt[slot] = receivedAt;
+        mTemperatures[slot] = snapshot.getTemperature();
+        mConditions[slot] = snapshot.getCondition();
+        mCount++;
+        mLatest = snapshot;
+    }
+
+    @Override
+    public long getInterval(long baseInterval, long now, long coveredUntil, long lastSeenAt) {
+        double interval = baseInterval * getVolatilityFactor(now) * getNightFactor(now)
+                * getUnseenFactor(now - lastSeenAt);
+
+        long max = coveredUntil > now ? Math.min(MAX_INTERVAL_MILLIS, coveredUntil - now) : MAX_UNCOVERED_INTERVAL_MILLIS;
+        return Math.max(MIN_INTERVAL_MILLIS, Math.min(Math.max(max, MIN_INTERVAL_MILLIS), (long) interval));
+    }
+
+    /**
+     * @return 2 if the recent snapshots share a condition and a temperature within a degree,
+     * 1 otherwise
+     */
+    double getVolatilityFactor(long now) {
+        int recent = 0;
+        int minTemperature = Integer.MAX_VALUE;
+        int maxTemperature = Integer.MIN_VALUE;
+        boolean conditionChanged = false;
+        WeatherCondition condition = null;
+        for (int i = 0; i < Math.min(mCount, HISTORY_SIZE); i++) {
+            if (now - mReceivedAt[i] > VOLATILITY_WINDOW_MILLIS) {
+                continue;
+            }
+            recent++;
+            minTemperature = Math.min(minTemperature, mTemperatures[i]);
+            maxTemperature = Math.max(maxTemperature, mTemperatures[i]);
+            conditionChanged |= condition != null && condition != mConditions[i];
+            condition = mConditions[i];
+        }
+        if (recent < 2) {
+            return 1;
+        }
+        return !conditionChanged && maxTemperature - minTemperature <= STABLE_TEMPERATURE_RANGE ? 2 : 1;
+    }
+
+    /**
+     * @return 2 at night, unless dawn is less than an hour away
+     */
+    double getNightFactor(long now) {
+        if (mLatest == null) {
+            return 1;
+        }
+        return mLatest.isNight(now / 1000) && mLatest.isNight((now + DAWN_MILLIS) / 1000) ? 2 : 1;
+    }
+
+    /**
+     * @return up to 4 when the face hasn't been looked at for hours
+     */
+    static double getUnseenFactor(long unseenMillis) {
+        if (unseenMillis >= VERY_LONG_UNSEEN_MILLIS) {
+            return 4;
+        }
+        return unseenMillis >= LONG_UNSEEN_MILLIS ? 2 : 1;
+    }
+}
@@ -0,0 +1,98 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Reusable character buffers for the clock and date text, so that drawing a frame
+ * does not create any Strings. Weekday and month names are built once per locale.
+ */
+public class ClockText {
+
+    private final char[] mHour = new char[2];
+    private final char[] mMinute = new char[2];
+    private final char[] mMonthDay = new char[2];
+
+    private Locale mLocale;
+    private char[][] mWeekDays;
+    private char[][] mMonths;
+
+    private int mWeekDay;
+    private int mMonth;
+
+    public ClockText(Locale locale) {
+        setLocale(locale);
+        setTime(0, 0);
+        setDate(0, 1, 0);
+    }
+
+    /**
+     * Rebuilds the weekday and month tables, only if the locale actually changed.
+     */
+    public void setLocale(Locale locale) {
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+
+        DateFormatSymbols symbols = DateFormatSymbols.getInstance(locale);
+        String[] weekDays = symbols.getShortWeekdays();
+        String[] months = symbols.getShortMonths();
+
+        // Same layout as Time.format("%a ") and Time.format(" %b")
+        mWeekDays = new char[7][];
+        for (int i = 0; i < 7; i++) {
+            mWeekDays[i] = (weekDays[Calendar.SUNDAY + i] + " ").toCharArray();
+        }
+        mMonths = new char[12][];
+        for (int i = 0; i < 12; i++) {
+            mMonths[i] = (" " + months[i]).toCharArray();
+        }
+    }
+
+    /**
+     * @param hour 0-23
+     * @param minute 0-59
+     */
+    public void setTime(int hour, int minute) {
+        fillTwoDigits(mHour, hour);
+        fillTwoDigits(mMinute, minute);
+    }
+
+    /**
+     * @param weekDay 0-6, Sunday is 0
+     * @param monthDay 1-31
+     * @param month 0-11
+     */
+    public void setDate(int weekDay, int monthDay, int month) {
+        mWeekDay = weekDay;
+        mMonth = month;
+        fillTwoDigits(mMonthDay, monthDay);
+    }
+
+    public char[] getHour() {
+        return mHour;
+    }
+
+    public char[] getMinute() {
+        return mMinute;
+    }
+
+    public char[] getMonthDay() {
+        return mMonthDay;
+    }
+
+    public char[] getWeekDay() {
+        return mWeekDays[mWeekDay];
+    }
+
+    public char[] getMonth() {
+        return mMonths[mMonth];
+    }
+
+    private static void fillTwoDigits(char[] buffer, int value) {
+        buffer[0] = (char) ('0' + value / 10 % 10);
+        buffer[1] = (char) ('0' + value % 10);
+    }
+}
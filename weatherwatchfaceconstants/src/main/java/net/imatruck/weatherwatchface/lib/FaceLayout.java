@@ -0,0 +1,135 @@
+package net.imatruck.weatherwatchface.lib;
+
+/**
+ * Where the watch face draws its text, worked out once from the surface size and the window
+ * insets. Positions and text sizes come from a 320px square face: text is scaled to the
+ * screen, baselines are spread over the visible height, which leaves out the chin of
+ * flat-tire round screens.
+ */
+public class FaceLayout {
+
+    public static final float REFERENCE_SIZE = 320f;
+
+    private static final float TIME_TEXT_SIZE = 60f;
+    private static final float DATE_TEXT_SIZE = 20f;
+    private static final float TEMPERATURE_TEXT_SIZE = 35f;
+    private static final float FEELS_LIKE_TEXT_SIZE = 20f;
+
+    // Baselines as a fraction of the visible height
+    private static final float TIME_Y = 0.25f;
+    private static final float DATE_Y = 0.35f;
+    private static final float TEMPERATURE_Y = 0.525f;
+    private static final float FEELS_LIKE_Y = 0.6f;
+    // Round screens are too narrow near the top for the time, it moves down a bit
+    private static final float ROUND_TOP_OFFSET = 0.03f;
+
+    private int mWidth;
+    private int mHeight;
+    private boolean mIsRound;
+    private int mChinSize;
+
+    private float mScale = 1f;
+    private float mCenterX;
+    private float mTimeY;
+    private float mDateY;
+    private float mTemperatureY;
+    private float mFeelsLikeY;
+
+    /**
+     * @return true if the layout changed
+     */
+    public boolean setSurfaceSize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return false;
+        }
+        mWidth = width;
+        mHeight = height;
+        compute();
+        return true;
+    }
+
+    /**
+     * @param chinSize height of the missing strip at the bottom of the screen, 0 if none
+     * @return true if the layout changed
+     */
+    public boolean setInsets(boolean isRound, int chinSize) {
+        if (isRound == mIsRound && chinSize == mChinSize) {
+            return false;
+        }
+        mIsRound = isRound;
+        mChinSize = chinSize;
+        compute();
+        return true;
+    }
+
+    private void compute() {
+        float visibleHeight = Math.max(0, mHeight - mChinSize);
+        float topOffset = mIsRound ? visibleHeight * ROUND_TOP_OFFSET : 0;
+
+        // The chin cuts the screen, it doesn't shrink it, text keeps the full screen scale
+        mScale = Math.min(mWidth, mHeight) / REFERENCE_SIZE;
+        mCenterX = mWidth / 2f;
+        mTimeY = visibleHeight * TIME_Y + topOffset;
+        mDateY = visibleHeight * DATE_Y + topOffset;
+        mTemperatureY = visibleHeight * TEMPERATURE_Y;
+        mFeelsLikeY = visibleHeight * FEELS_LIKE_Y;
+    }
+
+    /**
+     * @return false until the surface size is known
+     */
+    public boolean hasSize() {
+        return mWidth > 0 && mHeight > 0;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the size of the face relative to {@link #REFERENCE_SIZE}
+     */
+    public float getScale() {
+        return mScale;
+    }
+
+    public float getCenterX() {
+        return mCenterX;
+    }
+
+    public float getTimeY() {
+        return mTimeY;
+    }
+
+    public float getDateY() {
+        return mDateY;
+    }
+
+    public float getTemperatureY() {
+        return mTemperatureY;
+    }
+
+    public float getFeelsLikeY() {
+        return mFeelsLikeY;
+    }
+
+    public float getTimeTextSize() {
+        return TIME_TEXT_SIZE * mScale;
+    }
+
+    public float getDateTextSize() {
+        return DATE_TEXT_SIZE * mScale;
+    }
+
+    public float getTemperatureTextSize() {
+        return TEMPERATURE_TEXT_SIZE * mScale;
+    }
+
+    public float getFeelsLikeTextSize() {
+        return FEELS_LIKE_TEXT_SIZE * mScale;
+    }
+}
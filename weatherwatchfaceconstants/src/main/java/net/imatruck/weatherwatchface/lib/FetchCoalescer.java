@@ -0,0 +1,124 @@
+package net.imatruck.weatherwatchface.lib;
+
+/**
+ * Lets requests that arrive while a fetch is in flight join it, so a burst of requests
+ * only costs one upstream call. A forced request upgrades the fetch in flight, or queues a
+ * forced one after it if the fetch already decided whether to send unchanged weather.
+ * <p>
+ * Not thread safe, every call is expected on the same thread as the {@link Host} callback,
+ * except {@link Fetch#decideForce} which the fetch calls from wherever it runs.
+ *
+ * @param <R> what the caller knows about a request, handed to the fetch it starts
+ */
+public class FetchCoalescer<R> {
+
+    public enum Result {
+        STARTED,
+        JOINED,
+        REJECTED
+    }
+
+    public interface Host<R> {
+        /**
+         * Starts the fetch in the background, {@link #onFetchDone} must be called once it's
+         * over, whatever the outcome.
+         *
+         * @return false if the fetch couldn't be started
+         */
+        boolean startFetch(Fetch<R> fetch);
+    }
+
+    /**
+     * One fetch, with the request that started it.
+     */
+    public static final class Fetch<R> {
+
+        private final R mRequest;
+
+        // Guarded by this, upgraded from the coalescer's thread while the fetch runs
+        private boolean mForce;
+        private boolean mForceDecided;
+
+        Fetch(boolean force, R request) {
+            mForce = force;
+            mRequest = request;
+        }
+
+        public R getRequest() {
+            return mRequest;
+        }
+
+        /**
+         * Settles whether the fetch is forced, joining requests can't upgrade it after this.
+         *
+         * @return true if the fetch must send weather even if it's unchanged
+         */
+        public synchronized boolean decideForce() {
+            mForceDecided = true;
+            return mForce;
+        }
+
+        /**
+         * @return false if it's too late for the upgrade to change what gets sent
+         */
+        synchronized boolean upgradeToForce() {
+            mForce = true;
+            return !mForceDecided;
+        }
+    }
+
+    private final Host<R> mHost;
+
+    private Fetch<R> mInFlight;
+    private boolean mForceAfter;
+    private R mForceAfterRequest;
+
+    public FetchCoalescer(Host<R> host) {
+        mHost = host;
+    }
+
+    /**
+     * @param request handed to the fetch if this starts one, a request that joins doesn't
+     *                get a fetch of its own
+     */
+    public Result request(boolean force, R request) {
+        if (mInFlight != null) {
+            if (force && !mInFlight.upgradeToForce()) {
+                mForceAfter = true;
+                mForceAfterRequest = request;
+            }
+            return Result.JOINED;
+        }
+
+        Fetch<R> fetch = new Fetch<R>(force, request);
+        if (!mHost.startFetch(fetch)) {
+            return Result.REJECTED;
+        }
+        mInFlight = fetch;
+        return Result.STARTED;
+    }
+
+    /**
+     * Starts the forced fetch queued behind this one, if any.
+     *
+     * @return the result of starting the queued fetch, null if there was none or the fetch
+     * isn't the one in flight
+     */
+    public Result onFetchDone(Fetch<R> fetch) {
+        if (fetch != mInFlight) {
+            return null;
+        }
+        mInFlight = null;
+        if (!mForceAfter) {
+            return null;
+        }
+        R request = mForceAfterRequest;
+        mForceAfter = false;
+        mForceAfterRequest = null;
+        return request(true, request);
+    }
+
+    public boolean isFetching() {
+        return mInFlight != null;
+    }
+}
@@ -0,0 +1,210 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a Forecast.io response straight into a {@link WeatherSnapshot}. Only the fields the
+ * watch face shows are read, every other value in the response is skipped without being built.
+ * If the response has hourly data, the hours following the current observation become the
+ * snapshot's {@link WeatherTimeline}. The location the response is for goes along, so the
+ * watch can work out the sun times for the following days.
+ */
+public final class ForecastResponseParser {
+
+    private static final String KEY_LATITUDE = "latitude";
+    private static final String KEY_LONGITUDE = "longitude";
+    private static final String KEY_CURRENTLY = "currently";
+    private static final String KEY_HOURLY = "hourly";
+    private static final String KEY_DAILY = "daily";
+    private static final String KEY_DATA = "data";
+    private static final String KEY_TIME = "time";
+    private static final String KEY_ICON = "icon";
+    private static final String KEY_TEMPERATURE = "temperature";
+    private static final String KEY_APPARENT_TEMPERATURE = "apparentTemperature";
+    private static final String KEY_SUNRISE_TIME = "sunriseTime";
+    private static final String KEY_SUNSET_TIME = "sunsetTime";
+
+    private static final long TIME_UNKNOWN = Long.MIN_VALUE;
+
+    private ForecastResponseParser() {}
+
+    /**
+     * @return the current weather, or null if the response has no current condition or temperature
+     * @throws IOException if the response can't be read or isn't JSON
+     */
+    public static WeatherSnapshot parse(Reader reader) throws IOException {
+        Fields fields = new Fields();
+        JsonPullParser json = new JsonPullParser(reader);
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (KEY_LATITUDE.equals(name) && json.peek() == JsonPullParser.NUMBER) {
+                fields.latitude = json.nextDouble();
+            } else if (KEY_LONGITUDE.equals(name) && json.peek() == JsonPullParser.NUMBER) {
+                fields.longitude = json.nextDouble();
+            } else if (KEY_CURRENTLY.equals(name) && json.peek() == JsonPullParser.BEGIN_OBJECT) {
+                readCurrently(json, fields);
+            } else if (KEY_HOURLY.equals(name) && json.peek() == JsonPullParser.BEGIN_OBJECT) {
+                readHourly(json, fields);
+            } else if (KEY_DAILY.equals(name) && json.peek() == JsonPullParser.BEGIN_OBJECT) {
+                readDaily(json, fields);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (fields.icon == null || Double.isNaN(fields.temperature)) {
+            return null;
+        }
+        return new WeatherSnapshot(WeatherCondition.fromForecastName(fields.icon),
+                round(fields.temperature), round(getFeelsLike(fields)),
+                fields.sunrise, fields.sunset, buildTimeline(fields), fields.latitude, fields.longitude);
+    }
+
+    private static void readCurrently(JsonPullParser json, Fields fields) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            readDataPointField(json, fields, json.nextName());
+        }
+        json.endObject();
+    }
+
+    private static void readHourly(JsonPullParser json, Fields fields) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (KEY_DATA.equals(name) && json.peek() == JsonPullParser.BEGIN_ARRAY) {
+                json.beginArray();
+                // The first hour is usually the one in progress, keep one extra
+                while (json.hasNext() && fields.hours.size() <= WeatherTimeline.MAX_ENTRIES) {
+                    if (json.peek() != JsonPullParser.BEGIN_OBJECT) {
+                        json.skipValue();
+                        continue;
+                    }
+                    Fields hour = new Fields();
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        readDataPointField(json, hour, json.nextName());
+                    }
+                    json.endObject();
+                    fields.hours.add(hour);
+                }
+                while (json.hasNext()) {
+                    json.skipValue();
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private static void readDataPointField(JsonPullParser json, Fields fields, String name) throws IOException {
+        if (KEY_TIME.equals(name) && json.peek() == JsonPullParser.NUMBER) {
+            fields.time = json.nextLong();
+        } else if (KEY_ICON.equals(name) && json.peek() == JsonPullParser.STRING) {
+            fields.icon = json.nextString();
+        } else if (KEY_TEMPERATURE.equals(name) && json.peek() == JsonPullParser.NUMBER) {
+            fields.temperature = json.nextDouble();
+        } else if (KEY_APPARENT_TEMPERATURE.equals(name) && json.peek() == JsonPullParser.NUMBER) {
+            fields.apparentTemperature = json.nextDouble();
+        } else {
+            json.skipValue();
+        }
+    }
+
+    private static void readDaily(JsonPullParser json, Fields fields) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (KEY_DATA.equals(name) && json.peek() == JsonPullParser.BEGIN_ARRAY) {
+                json.beginArray();
+                if (json.hasNext()) {
+                    readToday(json, fields);
+                }
+                while (json.hasNext()) {
+                    json.skipValue();
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private static void readToday(JsonPullParser json, Fields fields) throws IOException {
+        if (json.peek() != JsonPullParser.BEGIN_OBJECT) {
+            json.skipValue();
+            return;
+        }
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (KEY_SUNRISE_TIME.equals(name) && json.peek() == JsonPullParser.NUMBER) {
+                fields.sunrise = json.nextLong();
+            } else if (KEY_SUNSET_TIME.equals(name) && json.peek() == JsonPullParser.NUMBER) {
+                fields.sunset = json.nextLong();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private static WeatherTimeline buildTimeline(Fields current) {
+        if (current.time == TIME_UNKNOWN || current.hours.isEmpty()) {
+            return null;
+        }
+
+        List<Fields> hours = new ArrayList<Fields>(WeatherTimeline.MAX_ENTRIES);
+        long previous = current.time;
+        for (Fields hour : current.hours) {
+            if (hours.size() < WeatherTimeline.MAX_ENTRIES && hour.time > previous
+                    && hour.icon != null && !Double.isNaN(hour.temperature)) {
+                hours.add(hour);
+                previous = hour.time;
+            }
+        }
+
+        int size = hours.size();
+        long[] times = new long[size];
+        WeatherCondition[] conditions = new WeatherCondition[size];
+        int[] temperatures = new int[size];
+        int[] feelsLike = new int[size];
+        for (int i = 0; i < size; i++) {
+            Fields hour = hours.get(i);
+            times[i] = hour.time;
+            conditions[i] = WeatherCondition.fromForecastName(hour.icon);
+            temperatures[i] = round(hour.temperature);
+            feelsLike[i] = round(getFeelsLike(hour));
+        }
+        return new WeatherTimeline(current.time, times, conditions, temperatures, feelsLike);
+    }
+
+    private static double getFeelsLike(Fields fields) {
+        return Double.isNaN(fields.apparentTemperature) ? fields.temperature : fields.apparentTemperature;
+    }
+
+    private static int round(double temperature) {
+        return Math.round((float) temperature);
+    }
+
+    private static class Fields {
+        long time = TIME_UNKNOWN;
+        String icon;
+        double temperature = Double.NaN;
+        double apparentTemperature = Double.NaN;
+        long sunrise = WeatherSnapshot.SUN_TIME_UNKNOWN;
+        long sunset = WeatherSnapshot.SUN_TIME_UNKNOWN;
+        double latitude = WeatherSnapshot.LOCATION_UNKNOWN;
+        double longitude = WeatherSnapshot.LOCATION_UNKNOWN;
+        final List<Fields> hours = new ArrayList<Fields>(WeatherTimeline.MAX_ENTRIES + 1);
+    }
+}
@@ -0,0 +1,313 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * GETs over HttpURLConnection, which keeps connections alive and pools them as long as every
+ * body is read to the end and closed, never disconnected. Bodies are asked gzipped and the
+ * whole request is bounded by a deadline, a connection still busy at the deadline is cut. A
+ * parsed body is kept with its ETag and Last-Modified, so the next request for the same URL is
+ * conditional and a 304 reuses it.
+ * They're kept in memory unless the caller brings a {@link ValidatorStore} that outlives the
+ * client.
+ */
+public class HttpClient {
+
+    public interface BodyParser<T> {
+        /**
+         * @return the parsed body, null if there's nothing to keep
+         */
+        T parse(Reader body) throws IOException;
+    }
+
+    /**
+     * Keeps parsed bodies with their validators between requests. Called from the requesting
+     * thread.
+     */
+    public interface ValidatorStore<T> {
+        /**
+         * @return what was kept under the key, null if nothing
+         */
+        Validated<T> load(String key);
+
+        /**
+         * @param validated null to drop what was kept under the key
+         */
+        void save(String key, Validated<T> validated);
+    }
+
+    /**
+     * A parsed body with the ETag and Last-Modified it came with, at least one of them set.
+     */
+    public static final class Validated<T> {
+        private final String mETag;
+        private final String mLastModified;
+        private final T mValue;
+
+        public Validated(String eTag, String lastModified, T value) {
+            mETag = eTag;
+            mLastModified = lastModified;
+            mValue = value;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        public T getValue() {
+            return mValue;
+        }
+    }
+
+    // Bodies kept for conditional requests, least recently used go first
+    private static final int MAX_VALIDATED = 4;
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "HttpClient watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final ValidatorStore<Object> mMemoryStore = new ValidatorStore<Object>() {
+        private final Map<String, Validated<Object>> mValidated =
+                new LinkedHashMap<String, Validated<Object>>(MAX_VALIDATED, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Validated<Object>> eldest) {
+                        return size() > MAX_VALIDATED;
+                    }
+                };
+
+        @Override
+        public synchronized Validated<Object> load(String key) {
+            return mValidated.get(key);
+        }
+
+        @Override
+        public synchronized void save(String key, Validated<Object> validated) {
+            if (validated != null) {
+                mValidated.put(key, validated);
+            } else {
+                mValidated.remove(key);
+            }
+        }
+    };
+
+    private long mRequestCount;
+    private long mNotModifiedCount;
+    private long mBytesReceived;
+
+    /**
+     * Only one parser should be used for a URL, since a 304 returns what it parsed before.
+     *
+     * @return the parsed body
+     * @throws IOException if the request fails, the status isn't 200 or 304, or the deadline
+     * passes
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String url, long timeoutMillis, BodyParser<T> parser) throws IOException {
+        return get(url, timeoutMillis, parser, (ValidatorStore<T>) (ValidatorStore<?>) mMemoryStore, url);
+    }
+
+    /**
+     * Like {@link #get(String, long, BodyParser)}, with validators kept in the store under
+     * the key. The key must only ever be used for this URL.
+     */
+    public <T> T get(String url, long timeoutMillis, BodyParser<T> parser, ValidatorStore<T> store, String key)
+            throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (this) {
+            mRequestCount++;
+        }
+        Validated<T> validated = store.load(key);
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        // Each step is bounded by the time left, and the watchdog cuts whatever step is still
+        // blocked at the deadline, connecting and waiting for the response included
+        int remainingMillis = getRemainingMillis(deadline);
+        connection.setConnectTimeout(remainingMillis);
+        connection.setReadTimeout(remainingMillis);
+        final AtomicBoolean cut = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = WATCHDOG.schedule(new Runnable() {
+            @Override
+            public void run() {
+                cut.set(true);
+                connection.disconnect();
+            }
+        }, remainingMillis, TimeUnit.MILLISECONDS);
+        try {
+            return exchange(connection, url, deadline, parser, store, key, validated);
+        } catch (IOException e) {
+            if (cut.get() && !(e instanceof SocketTimeoutException)) {
+                SocketTimeoutException timeout = new SocketTimeoutException("Deadline passed");
+                timeout.initCause(e);
+                throw timeout;
+            }
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    private <T> T exchange(HttpURLConnection connection, String url, long deadline, BodyParser<T> parser,
+                           ValidatorStore<T> store, String key, Validated<T> validated) throws IOException {
+        // Asked explicitly, the body is then inflated here on every platform
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (validated != null && validated.getETag() != null) {
+            connection.setRequestProperty("If-None-Match", validated.getETag());
+        }
+        if (validated != null && validated.getLastModified() != null) {
+            connection.setRequestProperty("If-Modified-Since", validated.getLastModified());
+        }
+
+        int code = connection.getResponseCode();
+        checkDeadline(deadline);
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED && validated != null) {
+            discard(connection.getInputStream(), deadline);
+            synchronized (this) {
+                mNotModifiedCount++;
+            }
+            return validated.getValue();
+        }
+        if (code != HttpURLConnection.HTTP_OK) {
+            discard(connection.getErrorStream(), deadline);
+            throw new IOException("HTTP " + code + " for " + url);
+        }
+
+        DeadlineInputStream received = new DeadlineInputStream(connection.getInputStream(), deadline);
+        InputStream body = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+                ? new GZIPInputStream(received) : received;
+        T value;
+        try {
+            value = parser.parse(new InputStreamReader(body, "UTF-8"));
+            // Parsers may stop early, the connection only goes back to the pool once it's read
+            drain(body);
+        } finally {
+            body.close();
+            synchronized (this) {
+                mBytesReceived += received.count;
+            }
+        }
+
+        String eTag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        if (value != null && (eTag != null || lastModified != null)) {
+            store.save(key, new Validated<T>(eTag, lastModified, value));
+        } else {
+            store.save(key, null);
+        }
+        return value;
+    }
+
+    public synchronized long getRequestCount() {
+        return mRequestCount;
+    }
+
+    public synchronized long getNotModifiedCount() {
+        return mNotModifiedCount;
+    }
+
+    /**
+     * @return body bytes read from the network, before inflating
+     */
+    public synchronized long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    private void discard(InputStream stream, long deadline) throws IOException {
+        if (stream == null) {
+            return;
+        }
+        DeadlineInputStream received = new DeadlineInputStream(stream, deadline);
+        try {
+            drain(received);
+        } finally {
+            received.close();
+            synchronized (this) {
+                mBytesReceived += received.count;
+            }
+        }
+    }
+
+    /**
+     * @return the time left before the deadline, for a connection timeout where 0 would mean
+     * waiting forever
+     * @throws SocketTimeoutException if there's none left
+     */
+    private static int getRemainingMillis(long deadline) throws SocketTimeoutException {
+        checkDeadline(deadline);
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        return (int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+    }
+
+    private static void checkDeadline(long deadline) throws SocketTimeoutException {
+        if (System.nanoTime() - deadline >= 0) {
+            throw new SocketTimeoutException("Deadline passed");
+        }
+    }
+
+    private static void drain(InputStream stream) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (stream.read(buffer) >= 0) {
+            // Nothing to keep
+        }
+    }
+
+    /**
+     * Counts the bytes read and fails reads once the deadline has passed, since the read
+     * timeout alone only bounds each read.
+     */
+    private static final class DeadlineInputStream extends FilterInputStream {
+
+        private final long mDeadline;
+        long count;
+
+        DeadlineInputStream(InputStream in, long deadline) {
+            super(in);
+            mDeadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline(mDeadline);
+            int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkDeadline(mDeadline);
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
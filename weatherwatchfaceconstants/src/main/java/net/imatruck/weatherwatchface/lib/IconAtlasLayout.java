@@ -0,0 +1,81 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Layout of the weather icon atlases, shared by the build-time packer that writes them and
+ * the watch face that reads them. There's one atlas per face size, pre-scaled for it. Cells
+ * are laid out with a column per condition, in wire code order, and a row per display mode.
+ * Each cell is followed by a transparent gutter, so filtering never picks up a neighbour.
+ */
+public final class IconAtlasLayout {
+
+    public static final int ROW_INTERACTIVE = 0;
+    public static final int ROW_AMBIENT = 1;
+    public static final int ROW_LOW_BIT = 2;
+    public static final int ROWS = 3;
+
+    public static final int GUTTER = 2;
+
+    // Smallest first
+    private static final int[] FACE_SIZES = {280, 320, 360, 400, 480};
+    private static final String RESOURCE_PREFIX = "icon_atlas_";
+
+    /**
+     * One per wire code from 1, {@link WeatherCondition#UNKNOWN} has no icon of its own.
+     */
+    public static final int COLUMNS;
+
+    static {
+        int maxWireCode = 0;
+        for (WeatherCondition condition : WeatherCondition.values()) {
+            maxWireCode = Math.max(maxWireCode, condition.getWireCode());
+        }
+        COLUMNS = maxWireCode;
+    }
+
+    private IconAtlasLayout() {
+    }
+
+    /**
+     * @return the face sizes an atlas is packed for, smallest first
+     */
+    public static int[] getFaceSizes() {
+        return FACE_SIZES.clone();
+    }
+
+    /**
+     * @return the drawable name of the atlas for a face size, like "icon_atlas_320"
+     */
+    public static String getResourceName(int faceSize) {
+        return RESOURCE_PREFIX + faceSize;
+    }
+
+    /**
+     * @return the column of the condition's icon, unknown weather shows a clear day
+     */
+    public static int getColumn(WeatherCondition condition) {
+        if (condition == WeatherCondition.UNKNOWN) {
+            condition = WeatherCondition.CLEAR_DAY;
+        }
+        return condition.getWireCode() - 1;
+    }
+
+    /**
+     * @return the icon names in column order, each the condition's forecast name with
+     * underscores, like "partly_cloudy_day"
+     * @throws IllegalStateException if a wire code has no condition, its column would be empty
+     */
+    public static List<String> getIconNames() {
+        List<String> names = new ArrayList<String>(COLUMNS);
+        for (int column = 0; column < COLUMNS; column++) {
+            WeatherCondition condition = WeatherCondition.fromWireCode(column + 1);
+            if (condition == WeatherCondition.UNKNOWN) {
+                throw new IllegalStateException("No condition has wire code " + (column + 1));
+            }
+            names.add(condition.getForecastName().replace('-', '_'));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,267 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser over a character stream. Values that aren't needed can be skipped
+ * without building any objects for them. Commas and colons are treated as separators and
+ * not validated, this is meant to read well-formed responses quickly, not to check them.
+ */
+final class JsonPullParser {
+
+    static final int END_DOCUMENT = 0;
+    static final int BEGIN_OBJECT = 1;
+    static final int END_OBJECT = 2;
+    static final int BEGIN_ARRAY = 3;
+    static final int END_ARRAY = 4;
+    static final int STRING = 5;
+    static final int NUMBER = 6;
+    static final int LITERAL = 7;
+
+    private static final int BUFFER_SIZE = 2048;
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private int mPos;
+    private int mLimit;
+    private long mOffset;
+
+    private final StringBuilder mText = new StringBuilder(32);
+
+    JsonPullParser(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * @return the type of the next token, without consuming it
+     */
+    int peek() throws IOException {
+        while (mPos < mLimit || fill()) {
+            char c = mBuffer[mPos];
+            switch (c) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                case ',':
+                case ':':
+                    mPos++;
+                    break;
+                case '{':
+                    return BEGIN_OBJECT;
+                case '}':
+                    return END_OBJECT;
+                case '[':
+                    return BEGIN_ARRAY;
+                case ']':
+                    return END_ARRAY;
+                case '"':
+                    return STRING;
+                case 't':
+                case 'f':
+                case 'n':
+                    return LITERAL;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        return NUMBER;
+                    }
+                    throw syntaxError("Unexpected character '" + c + "'");
+            }
+        }
+        return END_DOCUMENT;
+    }
+
+    /**
+     * @return true if the current object or array has more members
+     */
+    boolean hasNext() throws IOException {
+        int token = peek();
+        return token != END_OBJECT && token != END_ARRAY && token != END_DOCUMENT;
+    }
+
+    void beginObject() throws IOException {
+        consume(BEGIN_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        consume(END_OBJECT);
+    }
+
+    void beginArray() throws IOException {
+        consume(BEGIN_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        consume(END_ARRAY);
+    }
+
+    String nextName() throws IOException {
+        return nextString();
+    }
+
+    String nextString() throws IOException {
+        consume(STRING);
+        mText.setLength(0);
+        readString(true);
+        return mText.toString();
+    }
+
+    double nextDouble() throws IOException {
+        readNumber();
+        try {
+            return Double.parseDouble(mText.toString());
+        } catch (NumberFormatException e) {
+            throw syntaxError("Malformed number " + mText);
+        }
+    }
+
+    long nextLong() throws IOException {
+        readNumber();
+        String number = mText.toString();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(number);
+            } catch (NumberFormatException e2) {
+                throw syntaxError("Malformed number " + number);
+            }
+        }
+    }
+
+    /**
+     * Skips the next value, including everything nested in it.
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    mPos++;
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    if (depth == 0) {
+                        throw syntaxError("Expected a value");
+                    }
+                    mPos++;
+                    depth--;
+                    break;
+                case STRING:
+                    mPos++;
+                    readString(false);
+                    break;
+                case NUMBER:
+                case LITERAL:
+                    skipBareValue();
+                    break;
+                default:
+                    throw syntaxError("Unexpected end of document");
+            }
+        } while (depth > 0);
+    }
+
+    private void consume(int token) throws IOException {
+        int next = peek();
+        if (next != token) {
+            throw syntaxError("Expected token " + token + " but was " + next);
+        }
+        mPos++;
+    }
+
+    private void readString(boolean keep) throws IOException {
+        while (mPos < mLimit || fill()) {
+            char c = mBuffer[mPos++];
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                c = readEscape();
+            }
+            if (keep) {
+                mText.append(c);
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private char readEscape() throws IOException {
+        if (mPos == mLimit && !fill()) {
+            throw syntaxError("Unterminated escape");
+        }
+        char c = mBuffer[mPos++];
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (mPos == mLimit && !fill()) {
+                        throw syntaxError("Unterminated escape");
+                    }
+                    int digit = Character.digit(mBuffer[mPos++], 16);
+                    if (digit < 0) {
+                        throw syntaxError("Malformed unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                // Covers \" \\ and \/
+                return c;
+        }
+    }
+
+    private void readNumber() throws IOException {
+        if (peek() != NUMBER) {
+            throw syntaxError("Expected a number");
+        }
+        mText.setLength(0);
+        while (mPos < mLimit || fill()) {
+            char c = mBuffer[mPos];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                mText.append(c);
+                mPos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void skipBareValue() throws IOException {
+        while (mPos < mLimit || fill()) {
+            char c = mBuffer[mPos];
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                return;
+            }
+            mPos++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        mOffset += mLimit;
+        mPos = 0;
+        mLimit = 0;
+        int read = mReader.read(mBuffer, 0, mBuffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        mLimit = read;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at offset " + (mOffset + mPos));
+    }
+}
@@ -0,0 +1,86 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in log-linear buckets, like HdrHistogram: every power of two is split in
+ * {@link #SUB_BUCKETS} equal buckets, so percentiles are within 12.5% of the real value at
+ * any magnitude. Recording is lock-free and allocation-free, reading may run concurrently
+ * and sees each bucket either before or after a record.
+ * <p>
+ * The unit is up to the caller, frames are counted in microseconds and refreshes, which can
+ * take longer than {@link #MAX_VALUE} microseconds, in milliseconds.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Longer durations are counted as this, about 16s in microseconds
+    static final long MAX_VALUE = (1L << 24) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long duration) {
+        mCounts.incrementAndGet(indexOf(Math.max(0, Math.min(duration, MAX_VALUE))));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mCounts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest duration in the bucket holding the percentile, 0 if nothing was
+     * recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return highestValueAt(i);
+            }
+        }
+        return highestValueAt(BUCKET_COUNT - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+    }
+
+    static int indexOf(long duration) {
+        if (duration < SUB_BUCKETS) {
+            return (int) duration;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(duration);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (duration >> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,223 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.util.Random;
+
+/**
+ * Decides when the watch asks the mobile for weather. Requests are spaced by a regular
+ * interval once weather has been received, failures back off exponentially up to a cap,
+ * and every delay gets some jitter. Nothing is requested while the face is hidden. A
+ * {@link Policy} can stretch or shorten the regular interval.
+ * <p>
+ * Not thread safe, every call is expected on the same thread as the {@link Host} callbacks.
+ */
+public class RefreshScheduler {
+
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    public interface Policy {
+        void onWeatherReceived(long receivedAt, WeatherSnapshot snapshot);
+
+        /**
+         * @param baseInterval the regular interval, already longer in ambient mode or while
+         *                     the forecast covers ahead
+         * @param lastSeenAt when the face was last seen in interactive mode, now if it is
+         * @return the interval to wait after the last refresh
+         */
+        long getInterval(long baseInterval, long now, long coveredUntil, long lastSeenAt);
+    }
+
+    /**
+     * Keeps the regular interval.
+     */
+    public static final Policy FIXED_POLICY = new Policy() {
+        @Override
+        public void onWeatherReceived(long receivedAt, WeatherSnapshot snapshot) {}
+
+        @Override
+        public long getInterval(long baseInterval, long now, long coveredUntil, long lastSeenAt) {
+            return baseInterval;
+        }
+    };
+
+    public interface Host {
+        /**
+         * Sends a request to the mobile, {@link #onRequestDone} must be called once it's sent
+         * or failed. A forced request asks the mobile for fresh weather even if it has some.
+         */
+        void requestRefresh(boolean force);
+
+        /**
+         * Replaces any pending wake-up, {@link #onWakeUp} must be called after the delay.
+         */
+        void scheduleWakeUp(long delayMillis);
+
+        void cancelWakeUp();
+    }
+
+    public static final long INTERVAL_MILLIS = 15 * 60 * 1000;
+    public static final long COVERED_INTERVAL_MILLIS = 2 * 60 * 60 * 1000;
+    public static final long MIN_BACKOFF_MILLIS = 60 * 1000;
+    public static final long MAX_BACKOFF_MILLIS = 30 * 60 * 1000;
+
+    // The screen barely changes in ambient mode, there's no hurry
+    private static final int AMBIENT_INTERVAL_FACTOR = 2;
+    private static final double JITTER = 0.1;
+
+    private static final long NOT_SCHEDULED = -1;
+
+    private final Host mHost;
+    private final Clock mClock;
+    private final Random mRandom;
+    private final Policy mPolicy;
+
+    private boolean mVisible;
+    private boolean mAmbient;
+    private boolean mHasWeather;
+    private long mCoveredUntil;
+    private long mLastRefreshAt;
+    private int mFailures;
+    private boolean mInFlight;
+    private long mNextRefreshAt = NOT_SCHEDULED;
+    private int mRequestCount;
+    private long mLastSeenAt;
+
+    public RefreshScheduler(Host host, Clock clock, Random random) {
+        this(host, clock, random, FIXED_POLICY);
+    }
+
+    public RefreshScheduler(Host host, Clock clock, Random random, Policy policy) {
+        mHost = host;
+        mClock = clock;
+        mRandom = random;
+        mPolicy = policy;
+        mLastSeenAt = clock.currentTimeMillis();
+    }
+
+    public void setVisible(boolean visible) {
+        if (visible != mVisible) {
+            updateLastSeen();
+            mVisible = visible;
+            updateLastSeen();
+            reschedule();
+        }
+    }
+
+    public void setAmbient(boolean ambient) {
+        if (ambient != mAmbient) {
+            updateLastSeen();
+            mAmbient = ambient;
+            updateLastSeen();
+            reschedule();
+        }
+    }
+
+    /**
+     * @param receivedAt when the weather was received, in milliseconds
+     */
+    public void onWeatherReceived(long receivedAt, WeatherSnapshot snapshot) {
+        mPolicy.onWeatherReceived(receivedAt, snapshot);
+        WeatherTimeline timeline = snapshot.getTimeline();
+        onWeatherReceived(receivedAt, timeline != null ? timeline.getEnd() * 1000 : 0);
+    }
+
+    /**
+     * @param receivedAt when the weather was received, in milliseconds
+     * @param coveredUntil until when the weather has a forecast to follow, in milliseconds,
+     *                     or 0 if it doesn't have one
+     */
+    public void onWeatherReceived(long receivedAt, long coveredUntil) {
+        mHasWeather = true;
+        mCoveredUntil = coveredUntil;
+        mLastRefreshAt = Math.max(mLastRefreshAt, receivedAt);
+        mFailures = 0;
+        reschedule();
+    }
+
+    /**
+     * @param sent false if the request couldn't reach the mobile
+     */
+    public void onRequestDone(boolean sent) {
+        mInFlight = false;
+        // Until some weather comes back, a request that got no answer counts as a failure
+        if (sent && mHasWeather) {
+            mFailures = 0;
+        } else {
+            mFailures++;
+        }
+        reschedule();
+    }
+
+    public void onWakeUp() {
+        if (mVisible && !mInFlight && mNextRefreshAt != NOT_SCHEDULED
+                && mClock.currentTimeMillis() >= mNextRefreshAt) {
+            mInFlight = true;
+            mNextRefreshAt = NOT_SCHEDULED;
+            mLastRefreshAt = mClock.currentTimeMillis();
+            mRequestCount++;
+            mHost.requestRefresh(!mHasWeather);
+        }
+    }
+
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * @return when the next request is due in milliseconds, or -1 if none is scheduled
+     */
+    public long getNextRefreshAt() {
+        return mNextRefreshAt;
+    }
+
+    private void reschedule() {
+        if (!mVisible || mInFlight) {
+            mNextRefreshAt = NOT_SCHEDULED;
+            mHost.cancelWakeUp();
+            return;
+        }
+
+        long now = mClock.currentTimeMillis();
+        long delay;
+        if (mFailures > 0) {
+            delay = getBackoff(mFailures);
+        } else if (!mHasWeather) {
+            delay = 0;
+        } else {
+            delay = mCoveredUntil >= now + COVERED_INTERVAL_MILLIS ? COVERED_INTERVAL_MILLIS : INTERVAL_MILLIS;
+            if (mAmbient) {
+                delay *= AMBIENT_INTERVAL_FACTOR;
+            }
+            delay = mPolicy.getInterval(delay, now, mCoveredUntil, isSeen() ? now : mLastSeenAt);
+        }
+        mNextRefreshAt = delay > 0 ? Math.max(now, mLastRefreshAt + jitter(delay)) : now;
+        mHost.scheduleWakeUp(mNextRefreshAt - now);
+    }
+
+    private boolean isSeen() {
+        return mVisible && !mAmbient;
+    }
+
+    private void updateLastSeen() {
+        if (isSeen()) {
+            mLastSeenAt = mClock.currentTimeMillis();
+        }
+    }
+
+    private static long getBackoff(int failures) {
+        long backoff = MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16);
+        return Math.min(backoff, MAX_BACKOFF_MILLIS);
+    }
+
+    private long jitter(long delay) {
+        return delay + (long) (delay * JITTER * (2 * mRandom.nextDouble() - 1));
+    }
+}
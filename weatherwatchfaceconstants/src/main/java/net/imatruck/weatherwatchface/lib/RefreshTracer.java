@@ -0,0 +1,190 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Follows weather requests from the watch to the weather they bring back, and keeps latency
+ * histograms in milliseconds: end to end, each stage of the watch and the mobile, and the
+ * delivery time left over.
+ * <p>
+ * Every request carries a trace id, which the mobile sends back with the weather under
+ * {@link WeatherWatchFaceConstants#KEY_TRACE_ID}, along with how long each of its stages
+ * took. The two clocks can't be compared, so only the watch's timestamps are used, from a
+ * clock that keeps counting while asleep. Delivery is the time between the watch sending the
+ * request and getting the weather that the mobile's stages don't account for: the message to
+ * the mobile, putting the data item and syncing it back.
+ * <p>
+ * Safe from any thread, none of this is on a hot path.
+ */
+public class RefreshTracer {
+
+    /**
+     * Trace id of requests from older watches, or weather not sent for a request.
+     */
+    public static final long NO_TRACE = 0;
+
+    public static final String END_TO_END = "end-to-end";
+    public static final String DELIVERY = "delivery";
+    public static final String WATCH_PREFIX = "watch ";
+    public static final String MOBILE_PREFIX = "mobile ";
+
+    // Requests waiting for weather, older ones are counted as unanswered. Requests the mobile
+    // had no new weather for are never answered either.
+    static final int MAX_PENDING = 8;
+
+    private final Random mRandom;
+
+    private final long[] mPendingIds = new long[MAX_PENDING];
+    private final long[] mStartedAt = new long[MAX_PENDING];
+    private final long[] mSentAt = new long[MAX_PENDING];
+    private int mNextSlot;
+
+    private final Map<String, LatencyHistogram> mHistograms = new LinkedHashMap<String, LatencyHistogram>();
+    private long mAnswered;
+    private long mUnanswered;
+
+    public RefreshTracer(Random random) {
+        mRandom = random;
+        mHistograms.put(END_TO_END, new LatencyHistogram());
+    }
+
+    /**
+     * @return the id of a new trace, started now
+     */
+    public synchronized long start(long nowMillis) {
+        long id;
+        do {
+            id = mRandom.nextLong();
+        } while (id == NO_TRACE);
+
+        int slot = mNextSlot;
+        if (mPendingIds[slot] != NO_TRACE) {
+            mUnanswered++;
+        }
+        mPendingIds[slot] = id;
+        mStartedAt[slot] = nowMillis;
+        mSentAt[slot] = -1;
+        mNextSlot = (slot + 1) % MAX_PENDING;
+        return id;
+    }
+
+    /**
+     * Records the watch's stages once the request is sent.
+     */
+    public synchronized void onSent(long id, long nowMillis, Map<String, Long> stageMillis) {
+        int slot = find(id);
+        if (slot == -1) {
+            return;
+        }
+        mSentAt[slot] = nowMillis;
+        for (Map.Entry<String, Long> stage : stageMillis.entrySet()) {
+            getHistogram(WATCH_PREFIX + stage.getKey()).record(stage.getValue());
+        }
+    }
+
+    /**
+     * Records the trace the weather was sent for, if it's one of ours.
+     *
+     * @param stageNames the mobile's stages, in order, null if none were sent
+     * @param stageMillis how long each of the mobile's stages took
+     * @return false if the trace is unknown or already answered
+     */
+    public synchronized boolean onAnswered(long id, long nowMillis, String[] stageNames, long[] stageMillis) {
+        int slot = find(id);
+        if (slot == -1) {
+            return false;
+        }
+        mPendingIds[slot] = NO_TRACE;
+        mAnswered++;
+        getHistogram(END_TO_END).record(nowMillis - mStartedAt[slot]);
+
+        long mobileMillis = 0;
+        if (stageNames != null && stageMillis != null && stageNames.length == stageMillis.length) {
+            for (int i = 0; i < stageNames.length; i++) {
+                getHistogram(MOBILE_PREFIX + stageNames[i]).record(stageMillis[i]);
+                mobileMillis += stageMillis[i];
+            }
+        }
+        // The weather can beat the end of the sending task back to the main thread
+        if (mSentAt[slot] != -1) {
+            getHistogram(DELIVERY).record(nowMillis - mSentAt[slot] - mobileMillis);
+        }
+        return true;
+    }
+
+    public synchronized long getAnswered() {
+        return mAnswered;
+    }
+
+    public synchronized long getUnanswered() {
+        return mUnanswered;
+    }
+
+    /**
+     * @return the histogram of a stage, {@link #END_TO_END} or {@link #DELIVERY}, null if
+     * nothing was recorded for it yet
+     */
+    public synchronized LatencyHistogram get(String name) {
+        return mHistograms.get(name);
+    }
+
+    /**
+     * @return a readable summary, like "refreshes: 12 answered, 3 unanswered" followed by a
+     * line per histogram, "end-to-end: 12, p50 850ms, p90 1200ms, ..."
+     */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("refreshes: ").append(mAnswered).append(" answered, ")
+                .append(mUnanswered).append(" unanswered");
+        for (Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            report.append('\n').append(entry.getKey()).append(": ").append(histogram.getCount())
+                    .append(", p50 ").append(histogram.getValueAtPercentile(50)).append("ms")
+                    .append(", p90 ").append(histogram.getValueAtPercentile(90)).append("ms")
+                    .append(", p99 ").append(histogram.getValueAtPercentile(99)).append("ms")
+                    .append(", max ").append(histogram.getValueAtPercentile(100)).append("ms");
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return the payload of a weather request carrying the trace id
+     */
+    public static byte[] encodeTraceId(long id) {
+        return ByteBuffer.allocate(8).putLong(id).array();
+    }
+
+    /**
+     * @return the trace id in a weather request, {@link #NO_TRACE} if it has none
+     */
+    public static long decodeTraceId(byte[] payload) {
+        if (payload == null || payload.length != 8) {
+            return NO_TRACE;
+        }
+        return ByteBuffer.wrap(payload).getLong();
+    }
+
+    private int find(long id) {
+        if (id == NO_TRACE) {
+            return -1;
+        }
+        for (int i = 0; i < MAX_PENDING; i++) {
+            if (mPendingIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private LatencyHistogram getHistogram(String name) {
+        LatencyHistogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            mHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+}
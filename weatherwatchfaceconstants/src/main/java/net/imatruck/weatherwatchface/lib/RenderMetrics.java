@@ -0,0 +1,104 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Frame timings and counters of the watch face, cheap enough to record on every frame.
+ * Frames are recorded from the draw thread only, a report can be taken from any thread.
+ */
+public class RenderMetrics {
+
+    static final int RECENT_FRAMES = 64;
+
+    private final LatencyHistogram mInteractiveFrames = new LatencyHistogram();
+    private final LatencyHistogram mAmbientFrames = new LatencyHistogram();
+
+    // Ring of the last frame durations in microseconds, negative for ambient frames
+    private final AtomicLongArray mRecentFrames = new AtomicLongArray(RECENT_FRAMES);
+    private final AtomicInteger mFrameCount = new AtomicInteger();
+
+    private final AtomicLong mIconDecodes = new AtomicLong();
+    private final AtomicLong mRefreshRequests = new AtomicLong();
+
+    public void recordFrame(long durationNanos, boolean ambient) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        (ambient ? mAmbientFrames : mInteractiveFrames).record(micros);
+        int count = mFrameCount.get();
+        mRecentFrames.lazySet(count % RECENT_FRAMES, ambient ? -micros : micros);
+        mFrameCount.lazySet(count + 1);
+    }
+
+    public void onIconDecoded() {
+        mIconDecodes.incrementAndGet();
+    }
+
+    public void onRefreshRequested() {
+        mRefreshRequests.incrementAndGet();
+    }
+
+    public LatencyHistogram getInteractiveFrames() {
+        return mInteractiveFrames;
+    }
+
+    public LatencyHistogram getAmbientFrames() {
+        return mAmbientFrames;
+    }
+
+    public long getIconDecodes() {
+        return mIconDecodes.get();
+    }
+
+    public long getRefreshRequests() {
+        return mRefreshRequests.get();
+    }
+
+    /**
+     * @return up to {@link #RECENT_FRAMES} last frame durations in microseconds, oldest
+     * first, negative for ambient frames
+     */
+    public long[] getRecentFrames() {
+        int count = mFrameCount.get();
+        int size = Math.min(count, RECENT_FRAMES);
+        long[] frames = new long[size];
+        for (int i = 0; i < size; i++) {
+            frames[i] = mRecentFrames.get((count - size + i) % RECENT_FRAMES);
+        }
+        return frames;
+    }
+
+    /**
+     * @return a readable summary, like "interactive: 120 frames, p50 1.2ms, p90 2.5ms, ..."
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        appendFrames(report, "interactive", mInteractiveFrames);
+        appendFrames(report, "ambient", mAmbientFrames);
+        report.append("icon decodes: ").append(getIconDecodes())
+                .append(", refresh requests: ").append(getRefreshRequests()).append('\n');
+        report.append("recent:");
+        for (long frame : getRecentFrames()) {
+            report.append(' ').append(formatMillis(Math.abs(frame)));
+            if (frame < 0) {
+                report.append('a');
+            }
+        }
+        return report.toString();
+    }
+
+    private static void appendFrames(StringBuilder report, String name, LatencyHistogram frames) {
+        report.append(name).append(": ").append(frames.getCount()).append(" frames")
+                .append(", p50 ").append(formatMillis(frames.getValueAtPercentile(50)))
+                .append(", p90 ").append(formatMillis(frames.getValueAtPercentile(90)))
+                .append(", p99 ").append(formatMillis(frames.getValueAtPercentile(99)))
+                .append(", max ").append(formatMillis(frames.getValueAtPercentile(100)))
+                .append('\n');
+    }
+
+    private static String formatMillis(long micros) {
+        return String.format(Locale.US, "%.1fms", micros / 1000f);
+    }
+}
@@ -0,0 +1,136 @@
+package net.imatruck.weatherwatchface.lib;
+
+/**
+ * Sunrise and sunset from coordinates alone, so day and night keep following the sun
+ * without the mobile sending new sun times every day. Uses the sunrise equation: the solar
+ * transit from the mean anomaly and the equation of time, and the hour angle at which the
+ * upper limb of the sun touches the horizon, refraction included. Times are within a minute
+ * of reference tables up to the polar circles.
+ * <p>
+ * Times are in seconds since the epoch. A solar day is the one whose mean solar noon is
+ * nearest the given time, at the given longitude.
+ */
+public final class SolarCalculator {
+
+    /**
+     * Returned when the sun doesn't rise or set.
+     */
+    public static final long NONE = WeatherSnapshot.SUN_TIME_UNKNOWN;
+
+    private static final double J2000 = 2451545.0;
+    private static final double EPOCH_JULIAN_DAY = 2440587.5;
+    private static final double SECONDS_PER_DAY = 86400;
+    // Refraction and the radius of the sun, it's up as soon as its upper limb shows
+    private static final double HORIZON = Math.toRadians(-0.833);
+    private static final double OBLIQUITY = Math.toRadians(23.4397);
+
+    // Declination and equation of time at noon first, then at the event found with them
+    private static final int EVENT_ITERATIONS = 3;
+
+    // Days looked at for the next sunrise or sunset, past that the sun stays up or down
+    private static final int TRANSITION_SEARCH_DAYS = 3;
+
+    private SolarCalculator() {}
+
+    /**
+     * @return the sunrise of the solar day around the given time, or {@link #NONE}
+     */
+    public static long getSunrise(double latitude, double longitude, long epochSeconds) {
+        return getEvent(latitude, longitude, getSolarDay(longitude, epochSeconds), true);
+    }
+
+    /**
+     * @return the sunset of the solar day around the given time, or {@link #NONE}
+     */
+    public static long getSunset(double latitude, double longitude, long epochSeconds) {
+        return getEvent(latitude, longitude, getSolarDay(longitude, epochSeconds), false);
+    }
+
+    /**
+     * @return true if the given time is before sunrise or from sunset on in its solar day, or
+     * in a polar night
+     */
+    public static boolean isNight(double latitude, double longitude, long epochSeconds) {
+        long day = getSolarDay(longitude, epochSeconds);
+        long sunrise = getEvent(latitude, longitude, day, true);
+        long sunset = getEvent(latitude, longitude, day, false);
+        if (sunrise == NONE || sunset == NONE) {
+            // The sun stays down all day if it barely gets up at noon
+            double noon = day - longitude / 360;
+            double declination = getDeclination(getEclipticLongitude(noon, getMeanAnomaly(noon)));
+            return getCosHourAngle(latitude, declination) > 0;
+        }
+        return epochSeconds < sunrise || epochSeconds >= sunset;
+    }
+
+    /**
+     * @return the first sunrise or sunset after the given time, when {@link #isNight} changes,
+     * or {@link #NONE} if the sun doesn't rise or set in the next days
+     */
+    public static long getNextTransition(double latitude, double longitude, long epochSeconds) {
+        long day = getSolarDay(longitude, epochSeconds);
+        for (int i = 0; i < TRANSITION_SEARCH_DAYS; i++) {
+            long sunrise = getEvent(latitude, longitude, day + i, true);
+            if (sunrise != NONE && sunrise > epochSeconds) {
+                return sunrise;
+            }
+            long sunset = getEvent(latitude, longitude, day + i, false);
+            if (sunset != NONE && sunset > epochSeconds) {
+                return sunset;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return days since J2000 of the mean solar noon nearest the given time
+     */
+    private static long getSolarDay(double longitude, long epochSeconds) {
+        return Math.round(epochSeconds / SECONDS_PER_DAY + EPOCH_JULIAN_DAY - J2000 + longitude / 360);
+    }
+
+    private static long getEvent(double latitude, double longitude, long day, boolean sunrise) {
+        double meanNoon = day - longitude / 360;
+        double event = meanNoon;
+        for (int i = 0; i < EVENT_ITERATIONS; i++) {
+            double anomaly = getMeanAnomaly(event);
+            double eclipticLongitude = getEclipticLongitude(event, anomaly);
+            double cosHourAngle = getCosHourAngle(latitude, getDeclination(eclipticLongitude));
+            if (cosHourAngle >= 1 || cosHourAngle <= -1) {
+                return NONE;
+            }
+            double transit = meanNoon + 0.0053 * Math.sin(anomaly) - 0.0069 * Math.sin(2 * eclipticLongitude);
+            double halfDay = Math.acos(cosHourAngle) / (2 * Math.PI);
+            event = sunrise ? transit - halfDay : transit + halfDay;
+        }
+        return Math.round((event + J2000 - EPOCH_JULIAN_DAY) * SECONDS_PER_DAY);
+    }
+
+    private static double getMeanAnomaly(double daysSinceJ2000) {
+        return Math.toRadians((357.52911 + 0.98560028 * daysSinceJ2000) % 360);
+    }
+
+    /**
+     * Mean longitude plus the equation of center. The mean longitude is kept apart from the
+     * anomaly, the perihelion moves by a quarter of a degree every 15 years.
+     */
+    private static double getEclipticLongitude(double daysSinceJ2000, double anomaly) {
+        double meanLongitude = (280.46646 + 0.98564736 * daysSinceJ2000) % 360;
+        double center = 1.9148 * Math.sin(anomaly) + 0.02 * Math.sin(2 * anomaly) + 0.0003 * Math.sin(3 * anomaly);
+        return Math.toRadians(meanLongitude + center);
+    }
+
+    private static double getDeclination(double eclipticLongitude) {
+        return Math.asin(Math.sin(eclipticLongitude) * Math.sin(OBLIQUITY));
+    }
+
+    /**
+     * @return the cosine of the hour angle at sunrise, 1 or more if the sun stays down, -1 or
+     * less if it stays up
+     */
+    private static double getCosHourAngle(double latitude, double declination) {
+        double phi = Math.toRadians(latitude);
+        return (Math.sin(HORIZON) - Math.sin(phi) * Math.sin(declination))
+                / (Math.cos(phi) * Math.cos(declination));
+    }
+}
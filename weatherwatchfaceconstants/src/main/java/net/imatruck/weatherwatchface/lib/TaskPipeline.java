@@ -0,0 +1,213 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs jobs one at a time on a dedicated thread, with a bounded queue of waiting jobs.
+ * Cancellation is cooperative: nothing gets interrupted, a job notices it's cancelled or
+ * out of time when it starts a stage or asks for the time left for a blocking call.
+ */
+public class TaskPipeline {
+
+    public enum Outcome {
+        COMPLETED,
+        FAILED,
+        CANCELLED,
+        TIMED_OUT
+    }
+
+    public abstract static class Job {
+
+        /**
+         * Does the work, split in stages with {@link Run#stage}. Blocking calls should be
+         * given {@link Run#remainingMillis} as timeout.
+         */
+        protected abstract void run(Run run) throws Exception;
+
+        /**
+         * Called on the pipeline thread once the job is over, even if it never got to run
+         * because it was cancelled while waiting.
+         */
+        protected void onFinished(Run run) {}
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * @param maxWaiting how many jobs can wait for the one running, more get rejected
+     */
+    public TaskPipeline(final String name, int maxWaiting) {
+        mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(maxWaiting), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return the run to follow or cancel the job with, or null if the queue is full or the
+     * pipeline is shut down
+     */
+    public Run submit(final Job job, long timeoutMillis) {
+        final Run run = new Run(timeoutMillis);
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    execute(job, run);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        return run;
+    }
+
+    /**
+     * Stops taking jobs. Jobs already submitted still finish, cancel them to make it quick.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    private static void execute(Job job, Run run) {
+        try {
+            run.checkActive();
+            job.run(run);
+            run.finish(Outcome.COMPLETED, null);
+        } catch (CancellationException e) {
+            run.finish(run.mCancelled ? Outcome.CANCELLED : Outcome.TIMED_OUT, e);
+        } catch (Exception e) {
+            run.finish(Outcome.FAILED, e);
+        } finally {
+            job.onFinished(run);
+        }
+    }
+
+    /**
+     * One execution of a job: its deadline, cancellation flag and stage timings.
+     */
+    public static final class Run {
+
+        private final long mDeadline;
+        private volatile boolean mCancelled;
+
+        // Only touched on the pipeline thread until the run is over
+        private final Map<String, Long> mStageMillis = new LinkedHashMap<String, Long>();
+        private String mStage;
+        private long mStageStart;
+        private Outcome mOutcome;
+        private Exception mFailure;
+
+        Run(long timeoutMillis) {
+            mDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        /**
+         * Asks the job to stop at its next stage or blocking call. Safe from any thread.
+         */
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Ends the current stage and starts timing the next one.
+         *
+         * @throws CancellationException if the run was cancelled or is out of time
+         */
+        public void stage(String name) {
+            checkActive();
+            endStage();
+            mStage = name;
+            mStageStart = System.nanoTime();
+        }
+
+        /**
+         * @return the time left before the deadline, to use as timeout for a blocking call
+         * @throws CancellationException if the run was cancelled or is out of time
+         */
+        public long remainingMillis() {
+            checkActive();
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(mDeadline - System.nanoTime()));
+        }
+
+        /**
+         * @throws CancellationException if the run was cancelled or is out of time
+         */
+        public void checkActive() {
+            if (mCancelled) {
+                throw new CancellationException("Cancelled" + describeStage());
+            }
+            if (System.nanoTime() - mDeadline >= 0) {
+                throw new CancellationException("Deadline passed" + describeStage());
+            }
+        }
+
+        /**
+         * @return null until the run is over
+         */
+        public Outcome getOutcome() {
+            return mOutcome;
+        }
+
+        /**
+         * @return what stopped the run, or null if it completed
+         */
+        public Exception getFailure() {
+            return mFailure;
+        }
+
+        /**
+         * @return how long each stage took, in the order they ran
+         */
+        public Map<String, Long> getStageMillis() {
+            return mStageMillis;
+        }
+
+        /**
+         * @return the stage timings, like "connect 4ms, fetch 310ms"
+         */
+        public String getTimings() {
+            StringBuilder timings = new StringBuilder();
+            for (Map.Entry<String, Long> stage : mStageMillis.entrySet()) {
+                if (timings.length() > 0) {
+                    timings.append(", ");
+                }
+                timings.append(stage.getKey()).append(' ').append(stage.getValue()).append("ms");
+            }
+            return timings.toString();
+        }
+
+        void finish(Outcome outcome, Exception failure) {
+            endStage();
+            mOutcome = outcome;
+            mFailure = failure;
+        }
+
+        private void endStage() {
+            if (mStage != null) {
+                mStageMillis.put(mStage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStageStart));
+                mStage = null;
+            }
+        }
+
+        private String describeStage() {
+            return mStage != null ? " in stage " + mStage : "";
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Weather conditions as reported in the Forecast.io "icon" field. The wire code is what
+ * gets sent to the watch and must never change for an existing condition, add new ones
+ * at the end.
+ */
+public enum WeatherCondition {
+
+    UNKNOWN(0, null, Colors.CLEAR_DAY, Colors.CLEAR_DAY),
+    CLEAR_DAY(1, "clear-day", Colors.CLEAR_DAY, Colors.CLEAR_DAY),
+    CLEAR_NIGHT(2, "clear-night", Colors.CLEAR_NIGHT, Colors.CLEAR_NIGHT),
+    PARTLY_CLOUDY_DAY(3, "partly-cloudy-day", Colors.PARTLY_CLOUDY_DAY, Colors.PARTLY_CLOUDY_DAY),
+    PARTLY_CLOUDY_NIGHT(4, "partly-cloudy-night", Colors.PARTLY_CLOUDY_NIGHT, Colors.PARTLY_CLOUDY_NIGHT),
+    CLOUDY(5, "cloudy", Colors.CLOUDY_DAY, Colors.CLOUDY_NIGHT),
+    RAIN(6, "rain", Colors.RAIN_DAY, Colors.RAIN_NIGHT),
+    SNOW(7, "snow", Colors.SNOW_SLEET_FOG_DAY, Colors.SNOW_SLEET_FOG_NIGHT),
+    SLEET(8, "sleet", Colors.SNOW_SLEET_FOG_DAY, Colors.SNOW_SLEET_FOG_NIGHT),
+    WIND(9, "wind", Colors.CLEAR_DAY, Colors.CLEAR_NIGHT),
+    FOG(10, "fog", Colors.SNOW_SLEET_FOG_DAY, Colors.SNOW_SLEET_FOG_NIGHT);
+
+    private static final WeatherCondition[] BY_WIRE_CODE;
+    private static final Map<String, WeatherCondition> BY_FORECAST_NAME;
+
+    static {
+        WeatherCondition[] values = values();
+        int maxWireCode = 0;
+        for (WeatherCondition condition : values) {
+            maxWireCode = Math.max(maxWireCode, condition.mWireCode);
+        }
+        BY_WIRE_CODE = new WeatherCondition[maxWireCode + 1];
+        BY_FORECAST_NAME = new HashMap<String, WeatherCondition>();
+        for (WeatherCondition condition : values) {
+            BY_WIRE_CODE[condition.mWireCode] = condition;
+            if (condition.mForecastName != null) {
+                BY_FORECAST_NAME.put(condition.mForecastName, condition);
+            }
+        }
+    }
+
+    private final int mWireCode;
+    private final String mForecastName;
+    private final int mDayColor;
+    private final int mNightColor;
+
+    WeatherCondition(int wireCode, String forecastName, int dayColor, int nightColor) {
+        mWireCode = wireCode;
+        mForecastName = forecastName;
+        mDayColor = dayColor;
+        mNightColor = nightColor;
+    }
+
+    public int getWireCode() {
+        return mWireCode;
+    }
+
+    public String getForecastName() {
+        return mForecastName;
+    }
+
+    /**
+     * @return the ARGB background color for this condition
+     */
+    public int getBackgroundColor(boolean isNight) {
+        return isNight ? mNightColor : mDayColor;
+    }
+
+    /**
+     * @return the matching condition, or {@link #UNKNOWN} for null or unsupported names
+     */
+    public static WeatherCondition fromForecastName(String name) {
+        if (name == null) {
+            return UNKNOWN;
+        }
+        WeatherCondition condition = BY_FORECAST_NAME.get(name);
+        return condition != null ? condition : UNKNOWN;
+    }
+
+    /**
+     * @return the matching condition, or {@link #UNKNOWN} for codes this version doesn't know
+     */
+    public static WeatherCondition fromWireCode(int wireCode) {
+        if (wireCode < 0 || wireCode >= BY_WIRE_CODE.length || BY_WIRE_CODE[wireCode] == null) {
+            return UNKNOWN;
+        }
+        return BY_WIRE_CODE[wireCode];
+    }
+
+    private static final class Colors {
+        static final int CLEAR_DAY = 0xFF0288D1;
+        static final int CLEAR_NIGHT = 0xFF1A237E;
+        static final int PARTLY_CLOUDY_DAY = 0xFF78909C;
+        static final int PARTLY_CLOUDY_NIGHT = 0xFF263238;
+        static final int CLOUDY_DAY = 0xFF78909C;
+        static final int CLOUDY_NIGHT = 0xFF455A64;
+        static final int RAIN_DAY = 0xFF757575;
+        static final int RAIN_NIGHT = 0xFF424242;
+        static final int SNOW_SLEET_FOG_DAY = 0xFFBDBDBD;
+        static final int SNOW_SLEET_FOG_NIGHT = 0xFF757575;
+    }
+}
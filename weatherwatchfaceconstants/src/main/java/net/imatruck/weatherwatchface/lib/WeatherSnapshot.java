@@ -0,0 +1,182 @@
+package net.imatruck.weatherwatchface.lib;
+
+/**
+ * Current weather as shown on the watch face, optionally with a forecast for the next hours
+ * and the location it's for. Temperatures are rounded to whole degrees, sun times are in
+ * seconds since the epoch. The location is rounded to a hundredth of a degree, about a
+ * kilometre, which is plenty to follow the sun.
+ */
+public class WeatherSnapshot {
+
+    public static final long SUN_TIME_UNKNOWN = -1;
+    public static final double LOCATION_UNKNOWN = Double.NaN;
+
+    private static final double LOCATION_PRECISION = 100;
+
+    private final WeatherCondition mCondition;
+    private final int mTemperature;
+    private final int mFeelsLike;
+    private final long mSunrise;
+    private final long mSunset;
+    private final WeatherTimeline mTimeline;
+    private final double mLatitude;
+    private final double mLongitude;
+
+    public WeatherSnapshot(WeatherCondition condition, int temperature, int feelsLike,
+                           long sunrise, long sunset) {
+        this(condition, temperature, feelsLike, sunrise, sunset, null);
+    }
+
+    public WeatherSnapshot(WeatherCondition condition, int temperature, int feelsLike,
+                           long sunrise, long sunset, WeatherTimeline timeline) {
+        this(condition, temperature, feelsLike, sunrise, sunset, timeline, LOCATION_UNKNOWN, LOCATION_UNKNOWN);
+    }
+
+    public WeatherSnapshot(WeatherCondition condition, int temperature, int feelsLike,
+                           long sunrise, long sunset, WeatherTimeline timeline,
+                           double latitude, double longitude) {
+        mCondition = condition != null ? condition : WeatherCondition.UNKNOWN;
+        mTemperature = temperature;
+        mFeelsLike = feelsLike;
+        mSunrise = sunrise;
+        mSunset = sunset;
+        mTimeline = timeline;
+        boolean hasLocation = !Double.isNaN(latitude) && !Double.isNaN(longitude);
+        mLatitude = hasLocation ? Math.round(latitude * LOCATION_PRECISION) / LOCATION_PRECISION : LOCATION_UNKNOWN;
+        mLongitude = hasLocation ? Math.round(longitude * LOCATION_PRECISION) / LOCATION_PRECISION : LOCATION_UNKNOWN;
+    }
+
+    public WeatherCondition getCondition() {
+        return mCondition;
+    }
+
+    public int getTemperature() {
+        return mTemperature;
+    }
+
+    public int getFeelsLike() {
+        return mFeelsLike;
+    }
+
+    public long getSunrise() {
+        return mSunrise;
+    }
+
+    public long getSunset() {
+        return mSunset;
+    }
+
+    public boolean hasLocation() {
+        return !Double.isNaN(mLatitude);
+    }
+
+    /**
+     * @return the latitude in degrees, or {@link #LOCATION_UNKNOWN}
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * @return the longitude in degrees, or {@link #LOCATION_UNKNOWN}
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return the forecast for the next hours, or null if there is none
+     */
+    public WeatherTimeline getTimeline() {
+        return mTimeline;
+    }
+
+    /**
+     * @return true if the timeline can tell what the weather is until the given time
+     */
+    public boolean isCoveredUntil(long epochSeconds) {
+        return mTimeline != null && mTimeline.getEnd() > epochSeconds;
+    }
+
+    /**
+     * @return the weather to show at the given time according to the timeline, or this
+     * snapshot if there is no timeline or nothing moved yet. Call it on the snapshot that
+     * was received, a snapshot made from the timeline has no timeline of its own.
+     */
+    public WeatherSnapshot at(long epochSeconds) {
+        return mTimeline != null ? mTimeline.at(this, epochSeconds) : this;
+    }
+
+    public boolean hasSunTimes() {
+        return mSunrise != SUN_TIME_UNKNOWN && mSunset != SUN_TIME_UNKNOWN;
+    }
+
+    /**
+     * @return true if the given time is before sunrise or from sunset on, worked out from the
+     * location on any day, or from the sun times received. False if neither is known.
+     */
+    public boolean isNight(long epochSeconds) {
+        if (hasLocation()) {
+            return SolarCalculator.isNight(mLatitude, mLongitude, epochSeconds);
+        }
+        return hasSunTimes() && (epochSeconds < mSunrise || epochSeconds >= mSunset);
+    }
+
+    /**
+     * @return the next time {@link #isNight} changes after the given time, or
+     * {@link #SUN_TIME_UNKNOWN} if it isn't known to change soon
+     */
+    public long getNextDayNightChange(long epochSeconds) {
+        if (hasLocation()) {
+            return SolarCalculator.getNextTransition(mLatitude, mLongitude, epochSeconds);
+        }
+        if (!hasSunTimes()) {
+            return SUN_TIME_UNKNOWN;
+        }
+        if (epochSeconds < mSunrise) {
+            return mSunrise;
+        }
+        return epochSeconds < mSunset ? mSunset : SUN_TIME_UNKNOWN;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WeatherSnapshot)) {
+            return false;
+        }
+        WeatherSnapshot other = (WeatherSnapshot) o;
+        return mCondition == other.mCondition
+                && mTemperature == other.mTemperature
+                && mFeelsLike == other.mFeelsLike
+                && mSunrise == other.mSunrise
+                && mSunset == other.mSunset
+                && Double.compare(mLatitude, other.mLatitude) == 0
+                && Double.compare(mLongitude, other.mLongitude) == 0
+                && (mTimeline == null ? other.mTimeline == null : mTimeline.equals(other.mTimeline));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mCondition.hashCode();
+        result = 31 * result + mTemperature;
+        result = 31 * result + mFeelsLike;
+        result = 31 * result + (int) (mSunrise ^ (mSunrise >>> 32));
+        result = 31 * result + (int) (mSunset ^ (mSunset >>> 32));
+        result = 31 * result + (mTimeline != null ? mTimeline.hashCode() : 0);
+        long latitude = Double.doubleToLongBits(mLatitude);
+        result = 31 * result + (int) (latitude ^ (latitude >>> 32));
+        long longitude = Double.doubleToLongBits(mLongitude);
+        result = 31 * result + (int) (longitude ^ (longitude >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherSnapshot{" + mCondition + ", " + mTemperature + " (" + mFeelsLike + "), sun "
+                + mSunrise + "-" + mSunset + (hasLocation() ? " at " + mLatitude + "," + mLongitude : "")
+                + (mTimeline != null ? ", " + mTimeline : "") + "}";
+    }
+}
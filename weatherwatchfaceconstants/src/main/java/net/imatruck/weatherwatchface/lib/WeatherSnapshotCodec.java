@@ -0,0 +1,181 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of a {@link WeatherSnapshot}, sent to the watch under
+ * {@link WeatherWatchFaceConstants#KEY_WEATHER_SNAPSHOT}.
+ * <p>
+ * Layout, big endian: version byte, int condition wire code, short temperature,
+ * short feels like temperature, int sunrise and int sunset in epoch seconds (-1 if unknown).
+ * Anything added later goes after that in sections made of a tag byte, a short length and
+ * the section body, so older decoders can skip what they don't know.
+ * <p>
+ * Sections:
+ * <ul>
+ *     <li>{@link #SECTION_TIMELINE}: int observation time, byte entry count, then for each
+ *     entry an int time, a byte condition wire code and two short temperatures</li>
+ *     <li>{@link #SECTION_LOCATION}: short latitude and short longitude, in hundredths of a
+ *     degree</li>
+ * </ul>
+ */
+public final class WeatherSnapshotCodec {
+
+    public static final byte VERSION = 1;
+
+    static final int CORE_LENGTH = 1 + 4 + 2 + 2 + 4 + 4;
+    private static final int SECTION_HEADER_LENGTH = 1 + 2;
+
+    static final byte SECTION_TIMELINE = 1;
+    private static final int TIMELINE_HEADER_LENGTH = 4 + 1;
+    private static final int TIMELINE_ENTRY_LENGTH = 4 + 1 + 2 + 2;
+
+    static final byte SECTION_LOCATION = 2;
+    private static final int LOCATION_LENGTH = 2 + 2;
+    private static final int LOCATION_PRECISION = 100;
+
+    private WeatherSnapshotCodec() {}
+
+    /**
+     * @throws IllegalArgumentException if a temperature doesn't fit in a short or a sun time
+     * doesn't fit in an int
+     */
+    public static byte[] encode(WeatherSnapshot snapshot) {
+        WeatherTimeline timeline = snapshot.getTimeline();
+        int length = CORE_LENGTH;
+        if (timeline != null) {
+            length += SECTION_HEADER_LENGTH + getTimelineLength(timeline.size());
+        }
+        if (snapshot.hasLocation()) {
+            length += SECTION_HEADER_LENGTH + LOCATION_LENGTH;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(VERSION);
+        buffer.putInt(snapshot.getCondition().getWireCode());
+        buffer.putShort(toShort(snapshot.getTemperature()));
+        buffer.putShort(toShort(snapshot.getFeelsLike()));
+        buffer.putInt(toInt(snapshot.getSunrise()));
+        buffer.putInt(toInt(snapshot.getSunset()));
+
+        if (timeline != null) {
+            buffer.put(SECTION_TIMELINE);
+            buffer.putShort((short) getTimelineLength(timeline.size()));
+            buffer.putInt(toInt(timeline.getObservedAt()));
+            buffer.put((byte) timeline.size());
+            for (int i = 0; i < timeline.size(); i++) {
+                buffer.putInt(toInt(timeline.getTime(i)));
+                buffer.put(toByte(timeline.getCondition(i).getWireCode()));
+                buffer.putShort(toShort(timeline.getTemperature(i)));
+                buffer.putShort(toShort(timeline.getFeelsLike(i)));
+            }
+        }
+        if (snapshot.hasLocation()) {
+            buffer.put(SECTION_LOCATION);
+            buffer.putShort((short) LOCATION_LENGTH);
+            // Within a short, at most 18000 hundredths of a degree
+            buffer.putShort((short) Math.round(snapshot.getLatitude() * LOCATION_PRECISION));
+            buffer.putShort((short) Math.round(snapshot.getLongitude() * LOCATION_PRECISION));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the data is truncated, malformed or from an
+     * unsupported version
+     */
+    public static WeatherSnapshot decode(byte[] data) {
+        if (data == null || data.length < CORE_LENGTH) {
+            throw new IllegalArgumentException("Snapshot too short: "
+                    + (data == null ? "null" : data.length + " bytes"));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version " + version);
+        }
+
+        WeatherCondition condition = WeatherCondition.fromWireCode(buffer.getInt());
+        int temperature = buffer.getShort();
+        int feelsLike = buffer.getShort();
+        long sunrise = buffer.getInt();
+        long sunset = buffer.getInt();
+        WeatherTimeline timeline = null;
+        double latitude = WeatherSnapshot.LOCATION_UNKNOWN;
+        double longitude = WeatherSnapshot.LOCATION_UNKNOWN;
+
+        try {
+            while (buffer.hasRemaining()) {
+                byte tag = buffer.get();
+                int length = buffer.getShort() & 0xFFFF;
+                if (length > buffer.remaining()) {
+                    throw new IllegalArgumentException("Section length " + length + " past end of snapshot");
+                }
+                int end = buffer.position() + length;
+                if (tag == SECTION_TIMELINE) {
+                    timeline = decodeTimeline(buffer, length);
+                } else if (tag == SECTION_LOCATION) {
+                    if (length != LOCATION_LENGTH) {
+                        throw new IllegalArgumentException("Location section length " + length);
+                    }
+                    latitude = buffer.getShort() / (double) LOCATION_PRECISION;
+                    longitude = buffer.getShort() / (double) LOCATION_PRECISION;
+                }
+                buffer.position(end);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated section header", e);
+        }
+
+        return new WeatherSnapshot(condition, temperature, feelsLike, sunrise, sunset, timeline, latitude, longitude);
+    }
+
+    private static WeatherTimeline decodeTimeline(ByteBuffer buffer, int length) {
+        if (length < TIMELINE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Timeline section too short: " + length);
+        }
+        long observedAt = buffer.getInt();
+        int size = buffer.get() & 0xFF;
+        if (length != getTimelineLength(size)) {
+            throw new IllegalArgumentException("Timeline section length " + length + " for " + size + " entries");
+        }
+
+        long[] times = new long[size];
+        WeatherCondition[] conditions = new WeatherCondition[size];
+        int[] temperatures = new int[size];
+        int[] feelsLike = new int[size];
+        for (int i = 0; i < size; i++) {
+            times[i] = buffer.getInt();
+            conditions[i] = WeatherCondition.fromWireCode(buffer.get());
+            temperatures[i] = buffer.getShort();
+            feelsLike[i] = buffer.getShort();
+        }
+        return new WeatherTimeline(observedAt, times, conditions, temperatures, feelsLike);
+    }
+
+    private static int getTimelineLength(int size) {
+        return TIMELINE_HEADER_LENGTH + size * TIMELINE_ENTRY_LENGTH;
+    }
+
+    private static short toShort(int value) {
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Temperature out of range: " + value);
+        }
+        return (short) value;
+    }
+
+    private static byte toByte(int value) {
+        if (value < 0 || value > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Wire code out of range: " + value);
+        }
+        return (byte) value;
+    }
+
+    private static int toInt(long value) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Time out of range: " + value);
+        }
+        return (int) value;
+    }
+}
@@ -0,0 +1,155 @@
+package net.imatruck.weatherwatchface.lib;
+
+import java.util.Arrays;
+
+/**
+ * Hourly forecast for the next few hours, starting with the observation the snapshot was
+ * made from. Lets the watch move the display forward by itself between syncs.
+ */
+public class WeatherTimeline {
+
+    public static final int MAX_ENTRIES = 12;
+
+    // How long the last entry stays valid
+    private static final long ENTRY_DURATION_SECONDS = 60 * 60;
+
+    private final long mObservedAt;
+    private final long[] mTimes;
+    private final WeatherCondition[] mConditions;
+    private final int[] mTemperatures;
+    private final int[] mFeelsLike;
+
+    /**
+     * @param observedAt time of the current conditions, in epoch seconds
+     * @param times forecast times in epoch seconds, increasing and after observedAt
+     */
+    public WeatherTimeline(long observedAt, long[] times, WeatherCondition[] conditions,
+                           int[] temperatures, int[] feelsLike) {
+        int size = times.length;
+        if (size > MAX_ENTRIES || conditions.length != size || temperatures.length != size
+                || feelsLike.length != size) {
+            throw new IllegalArgumentException("Bad timeline size " + size);
+        }
+        long previous = observedAt;
+        for (long time : times) {
+            if (time <= previous) {
+                throw new IllegalArgumentException("Timeline times must increase");
+            }
+            previous = time;
+        }
+        mObservedAt = observedAt;
+        mTimes = times.clone();
+        mConditions = conditions.clone();
+        mTemperatures = temperatures.clone();
+        mFeelsLike = feelsLike.clone();
+    }
+
+    public long getObservedAt() {
+        return mObservedAt;
+    }
+
+    public int size() {
+        return mTimes.length;
+    }
+
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    public WeatherCondition getCondition(int index) {
+        return mConditions[index];
+    }
+
+    public int getTemperature(int index) {
+        return mTemperatures[index];
+    }
+
+    public int getFeelsLike(int index) {
+        return mFeelsLike[index];
+    }
+
+    /**
+     * @return the time, in epoch seconds, after which the timeline has nothing left to show
+     */
+    public long getEnd() {
+        return (mTimes.length > 0 ? mTimes[mTimes.length - 1] : mObservedAt) + ENTRY_DURATION_SECONDS;
+    }
+
+    /**
+     * @return the weather at the given time. The condition is the one of the last entry
+     * reached, temperatures are interpolated between entries. Before the first entry the
+     * current observation is used.
+     */
+    WeatherSnapshot at(WeatherSnapshot current, long epochSeconds) {
+        if (mTimes.length == 0 || epochSeconds < mObservedAt) {
+            return current;
+        }
+
+        int next = 0;
+        while (next < mTimes.length && mTimes[next] <= epochSeconds) {
+            next++;
+        }
+
+        WeatherCondition condition;
+        int temperature;
+        int feelsLike;
+        if (next == 0) {
+            // Between the observation and the first forecast hour
+            condition = current.getCondition();
+            temperature = interpolate(mObservedAt, current.getTemperature(), mTimes[0], mTemperatures[0], epochSeconds);
+            feelsLike = interpolate(mObservedAt, current.getFeelsLike(), mTimes[0], mFeelsLike[0], epochSeconds);
+        } else if (next == mTimes.length) {
+            condition = mConditions[next - 1];
+            temperature = mTemperatures[next - 1];
+            feelsLike = mFeelsLike[next - 1];
+        } else {
+            int last = next - 1;
+            condition = mConditions[last];
+            temperature = interpolate(mTimes[last], mTemperatures[last], mTimes[next], mTemperatures[next], epochSeconds);
+            feelsLike = interpolate(mTimes[last], mFeelsLike[last], mTimes[next], mFeelsLike[next], epochSeconds);
+        }
+
+        if (condition == current.getCondition() && temperature == current.getTemperature()
+                && feelsLike == current.getFeelsLike()) {
+            return current;
+        }
+        return new WeatherSnapshot(condition, temperature, feelsLike, current.getSunrise(), current.getSunset(),
+                null, current.getLatitude(), current.getLongitude());
+    }
+
+    private static int interpolate(long fromTime, int fromValue, long toTime, int toValue, long time) {
+        double progress = (double) (time - fromTime) / (toTime - fromTime);
+        return (int) Math.round(fromValue + (toValue - fromValue) * progress);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WeatherTimeline)) {
+            return false;
+        }
+        WeatherTimeline other = (WeatherTimeline) o;
+        return mObservedAt == other.mObservedAt
+                && Arrays.equals(mTimes, other.mTimes)
+                && Arrays.equals(mConditions, other.mConditions)
+                && Arrays.equals(mTemperatures, other.mTemperatures)
+                && Arrays.equals(mFeelsLike, other.mFeelsLike);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mObservedAt ^ (mObservedAt >>> 32));
+        result = 31 * result + Arrays.hashCode(mTimes);
+        result = 31 * result + Arrays.hashCode(mConditions);
+        result = 31 * result + Arrays.hashCode(mTemperatures);
+        result = 31 * result + Arrays.hashCode(mFeelsLike);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherTimeline{" + mTimes.length + " entries from " + mObservedAt + " to " + getEnd() + "}";
+    }
+}
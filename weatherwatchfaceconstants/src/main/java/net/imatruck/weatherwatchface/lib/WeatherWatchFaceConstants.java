@@ -2,15 +2,24 @@ package net.imatruck.weatherwatchface.lib;
 
 public class WeatherWatchFaceConstants {
 
+    /** Weather requests carry a trace id, see {@link RefreshTracer#encodeTraceId} */
     public static final String MESSAGE_URI_REQUEST_WEATHER = "/request_weather";
     public static final String MESSAGE_URI_REQUEST_WEATHER_FORCE = "/force_weather";
     public static final String DATASYNC_URI_WEATHER_INFO = "/weather_info";
+    /** Asks the watch for its {@link RenderMetrics}, it answers with MESSAGE_URI_METRICS */
+    public static final String MESSAGE_URI_REQUEST_METRICS = "/request_metrics";
+    /** {@link RenderMetrics#report()} and {@link RefreshTracer#report()} as UTF-8 */
+    public static final String MESSAGE_URI_METRICS = "/metrics";
 
-    public static final String KEY_WEATHER_ICON = "CONDITION";
-    public static final String KEY_WEATHER_TEMP = "TEMP";
-    public static final String KEY_WEATHER_FEELSLIKE = "FEELSLIKE";
-    public static final String KEY_WEATHER_SUNRISE = "SUNRISE";
-    public static final String KEY_WEATHER_SUNSET = "SUNSET";
-    public static final String KEY_WEATHER_FORCE_REFRESH = "FORCEREFRESH";
+    /** {@link WeatherSnapshot} encoded with {@link WeatherSnapshotCodec} */
+    public static final String KEY_WEATHER_SNAPSHOT = "SNAPSHOT";
+    /** Increases with every item sent, lets the watch ignore stale or duplicate items */
+    public static final String KEY_WEATHER_SEQUENCE = "SEQUENCE";
+    /** Trace id of the request the weather was sent for, missing if it had none */
+    public static final String KEY_TRACE_ID = "TRACE_ID";
+    /** Names of the mobile's stages for the traced request, in order */
+    public static final String KEY_TRACE_STAGES = "TRACE_STAGES";
+    /** How long each of the mobile's stages took, in milliseconds */
+    public static final String KEY_TRACE_MILLIS = "TRACE_MILLIS";
 
 }
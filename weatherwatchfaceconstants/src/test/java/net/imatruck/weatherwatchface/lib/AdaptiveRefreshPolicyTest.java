@@ -0,0 +1,135 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveRefreshPolicyTest {
+
+    // Noon, with the sun up from 6:00 to 18:00
+    private static final long NOON = 1421323200000L;
+    private static final long SUNRISE = NOON / 1000 - 6 * 3600;
+    private static final long SUNSET = NOON / 1000 + 6 * 3600;
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long BASE = RefreshScheduler.INTERVAL_MILLIS;
+
+    @Test
+    public void keepsBaseIntervalWithoutHistory() {
+        AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy();
+        assertEquals(BASE, policy.getInterval(BASE, NOON, 0, NOON));
+    }
+
+    @Test
+    public void stretchesWhileWeatherIsStable() {
+        AdaptiveRefreshPolicy policy = receive(WeatherCondition.CLOUDY, 10, 11, 10);
+        assertEquals(2 * BASE, policy.getInterval(BASE, NOON, 0, NOON));
+    }
+
+    @Test
+    public void keepsBaseIntervalWhileWeatherChanges() {
+        assertEquals(BASE, receive(WeatherCondition.CLOUDY, 10, 14).getInterval(BASE, NOON, 0, NOON));
+
+        AdaptiveRefreshPolicy policy = receive(WeatherCondition.CLOUDY, 10, 10);
+        policy.onWeatherReceived(NOON, snapshot(WeatherCondition.RAIN, 10));
+        assertEquals(BASE, policy.getInterval(BASE, NOON, 0, NOON));
+    }
+
+    @Test
+    public void ignoresOldSnapshots() {
+        AdaptiveRefreshPolicy policy = receive(WeatherCondition.CLOUDY, 10, 10);
+        assertEquals(1.0, policy.getVolatilityFactor(NOON + 4 * HOUR), 0);
+    }
+
+    @Test
+    public void stretchesAtNightUntilDawnIsClose() {
+        AdaptiveRefreshPolicy policy = receive(WeatherCondition.CLEAR_NIGHT, 0);
+        assertEquals(2.0, policy.getNightFactor(NOON + 8 * HOUR), 0);
+        assertEquals(2.0, policy.getNightFactor(NOON - 9 * HOUR), 0);
+        assertEquals(1.0, policy.getNightFactor(NOON - 6 * HOUR - 30 * MINUTE), 0);
+        assertEquals(1.0, policy.getNightFactor(NOON), 0);
+    }
+
+    @Test
+    public void stretchesWhileUnseen() {
+        assertEquals(1.0, AdaptiveRefreshPolicy.getUnseenFactor(30 * MINUTE), 0);
+        assertEquals(2.0, AdaptiveRefreshPolicy.getUnseenFactor(HOUR), 0);
+        assertEquals(4.0, AdaptiveRefreshPolicy.getUnseenFactor(5 * HOUR), 0);
+    }
+
+    @Test
+    public void staysWithinBounds() {
+        AdaptiveRefreshPolicy policy = receive(WeatherCondition.CLOUDY, 10, 10);
+        long night = NOON + 8 * HOUR;
+        long unseenSince = night - 5 * HOUR;
+
+        long covered = RefreshScheduler.COVERED_INTERVAL_MILLIS;
+
+        // At night and unseen is 8 times the base
+        assertEquals(AdaptiveRefreshPolicy.MAX_UNCOVERED_INTERVAL_MILLIS,
+                policy.getInterval(BASE, night, 0, unseenSince));
+        assertEquals(AdaptiveRefreshPolicy.MAX_INTERVAL_MILLIS,
+                policy.getInterval(covered, night, night + 12 * HOUR, unseenSince));
+        assertEquals(3 * HOUR, policy.getInterval(covered, night, night + 3 * HOUR, unseenSince));
+        assertEquals(AdaptiveRefreshPolicy.MIN_INTERVAL_MILLIS, policy.getInterval(MINUTE, NOON, 0, NOON));
+    }
+
+    @Test
+    public void fixedPolicyKeepsBaseInterval() {
+        assertEquals(BASE, RefreshScheduler.FIXED_POLICY.getInterval(BASE, NOON, NOON + 12 * HOUR, NOON - 5 * HOUR));
+    }
+
+    @Test
+    public void schedulerAppliesPolicy() {
+        final long[] now = {NOON};
+        final long[] wakeUpDelay = {-1};
+        RefreshScheduler.Clock clock = new RefreshScheduler.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        RefreshScheduler.Host host = new RefreshScheduler.Host() {
+            @Override
+            public void requestRefresh(boolean force) {
+            }
+
+            @Override
+            public void scheduleWakeUp(long delayMillis) {
+                wakeUpDelay[0] = delayMillis;
+            }
+
+            @Override
+            public void cancelWakeUp() {
+                wakeUpDelay[0] = -1;
+            }
+        };
+        RefreshScheduler scheduler = new RefreshScheduler(host, clock, new Random(1), new AdaptiveRefreshPolicy());
+        scheduler.setVisible(true);
+        for (int i = 0; i < 3; i++) {
+            scheduler.onWakeUp();
+            scheduler.onRequestDone(true);
+            scheduler.onWeatherReceived(now[0], snapshot(WeatherCondition.CLOUDY, 10));
+            now[0] += wakeUpDelay[0];
+        }
+        // Jitter is 10% at most
+        assertTrue(wakeUpDelay[0] >= 2 * BASE * 0.9 && wakeUpDelay[0] <= 2 * BASE * 1.1);
+    }
+
+    private static AdaptiveRefreshPolicy receive(WeatherCondition condition, int... temperatures) {
+        AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy();
+        long receivedAt = NOON - temperatures.length * 20 * MINUTE;
+        for (int temperature : temperatures) {
+            receivedAt += 20 * MINUTE;
+            policy.onWeatherReceived(receivedAt, snapshot(condition, temperature));
+        }
+        return policy;
+    }
+
+    private static WeatherSnapshot snapshot(WeatherCondition condition, int temperature) {
+        return new WeatherSnapshot(condition, temperature, temperature - 2, SUNRISE, SUNSET);
+    }
+}
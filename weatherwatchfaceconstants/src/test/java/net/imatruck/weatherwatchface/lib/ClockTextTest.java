@@ -0,0 +1,75 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ClockTextTest {
+
+    private static final int WARMUP_FRAMES = 200000;
+    private static final int MEASURED_FRAMES = 100000;
+
+    @Test
+    public void formatsTimeWithLeadingZeros() {
+        ClockText text = new ClockText(Locale.US);
+        text.setTime(7, 5);
+        assertArrayEquals("07".toCharArray(), text.getHour());
+        assertArrayEquals("05".toCharArray(), text.getMinute());
+
+        text.setTime(23, 59);
+        assertArrayEquals("23".toCharArray(), text.getHour());
+        assertArrayEquals("59".toCharArray(), text.getMinute());
+    }
+
+    @Test
+    public void formatsDateLikeTimeFormat() {
+        ClockText text = new ClockText(Locale.US);
+        text.setDate(1, 9, 0);
+        assertArrayEquals("Mon ".toCharArray(), text.getWeekDay());
+        assertArrayEquals("09".toCharArray(), text.getMonthDay());
+        assertArrayEquals(" Jan".toCharArray(), text.getMonth());
+
+        text.setLocale(Locale.FRANCE);
+        text.setDate(0, 31, 11);
+        assertEquals('d', text.getWeekDay()[0]);
+        assertArrayEquals("31".toCharArray(), text.getMonthDay());
+    }
+
+    @Test
+    public void steadyStateFrameDoesNotAllocate() {
+        ClockText text = new ClockText(Locale.US);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        int checksum = 0;
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            checksum += frame(text, i);
+        }
+        threads.getThreadAllocatedBytes(threadId);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            checksum += frame(text, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals("bytes allocated over " + MEASURED_FRAMES + " frames (checksum " + checksum + ")",
+                0, allocated);
+    }
+
+    /**
+     * Does what the watch face does on every frame: update the digits, read the buffers.
+     */
+    private static int frame(ClockText text, int i) {
+        text.setLocale(Locale.US);
+        text.setTime(i / 60 % 24, i % 60);
+        text.setDate(i % 7, i % 31 + 1, i % 12);
+        return text.getHour()[1] + text.getMinute()[1] + text.getWeekDay().length
+                + text.getMonthDay()[0] + text.getMonth().length;
+    }
+}
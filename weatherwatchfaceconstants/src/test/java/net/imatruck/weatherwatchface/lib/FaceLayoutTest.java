@@ -0,0 +1,73 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FaceLayoutTest {
+
+    private static final float DELTA = 0.001f;
+
+    @Test
+    public void squareReferenceFaceKeepsOriginalPositions() {
+        FaceLayout layout = new FaceLayout();
+        assertFalse(layout.hasSize());
+        assertTrue(layout.setSurfaceSize(320, 320));
+        assertTrue(layout.hasSize());
+
+        assertEquals(160f, layout.getCenterX(), DELTA);
+        assertEquals(80f, layout.getTimeY(), DELTA);
+        assertEquals(112f, layout.getDateY(), DELTA);
+        assertEquals(168f, layout.getTemperatureY(), DELTA);
+        assertEquals(192f, layout.getFeelsLikeY(), DELTA);
+        assertEquals(60f, layout.getTimeTextSize(), DELTA);
+        assertEquals(35f, layout.getTemperatureTextSize(), DELTA);
+        assertEquals(20f, layout.getDateTextSize(), DELTA);
+    }
+
+    @Test
+    public void scalesTextToSurface() {
+        FaceLayout layout = new FaceLayout();
+        layout.setSurfaceSize(400, 400);
+        assertEquals(1.25f, layout.getScale(), DELTA);
+        assertEquals(75f, layout.getTimeTextSize(), DELTA);
+        assertEquals(200f, layout.getCenterX(), DELTA);
+    }
+
+    @Test
+    public void chinMovesPositionsUpWithoutShrinkingText() {
+        FaceLayout layout = new FaceLayout();
+        layout.setSurfaceSize(320, 320);
+        assertTrue(layout.setInsets(true, 30));
+
+        assertEquals(1f, layout.getScale(), DELTA);
+        assertEquals(290 * 0.525f, layout.getTemperatureY(), DELTA);
+        assertEquals(290 * 0.6f, layout.getFeelsLikeY(), DELTA);
+        assertTrue(layout.getFeelsLikeY() < 290);
+    }
+
+    @Test
+    public void roundScreenMovesTimeDown() {
+        FaceLayout square = new FaceLayout();
+        square.setSurfaceSize(320, 320);
+        FaceLayout round = new FaceLayout();
+        round.setSurfaceSize(320, 320);
+        round.setInsets(true, 0);
+
+        assertTrue(round.getTimeY() > square.getTimeY());
+        assertTrue(round.getDateY() > square.getDateY());
+        assertEquals(square.getTemperatureY(), round.getTemperatureY(), DELTA);
+    }
+
+    @Test
+    public void reportsChangesOnlyWhenInputsChange() {
+        FaceLayout layout = new FaceLayout();
+        assertTrue(layout.setSurfaceSize(320, 290));
+        assertFalse(layout.setSurfaceSize(320, 290));
+        assertTrue(layout.setInsets(true, 0));
+        assertFalse(layout.setInsets(true, 0));
+        assertTrue(layout.setInsets(true, 30));
+    }
+}
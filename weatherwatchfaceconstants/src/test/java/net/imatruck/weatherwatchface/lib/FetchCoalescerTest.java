@@ -0,0 +1,99 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FetchCoalescerTest {
+
+    private final List<FetchCoalescer.Fetch<String>> mStarted = new ArrayList<FetchCoalescer.Fetch<String>>();
+    private boolean mAccept = true;
+
+    private final FetchCoalescer<String> mCoalescer = new FetchCoalescer<String>(new FetchCoalescer.Host<String>() {
+        @Override
+        public boolean startFetch(FetchCoalescer.Fetch<String> fetch) {
+            if (mAccept) {
+                mStarted.add(fetch);
+            }
+            return mAccept;
+        }
+    });
+
+    @Test
+    public void joinsFetchInFlight() {
+        assertEquals(FetchCoalescer.Result.STARTED, mCoalescer.request(false, "a"));
+        assertEquals(FetchCoalescer.Result.JOINED, mCoalescer.request(false, "b"));
+        assertEquals(FetchCoalescer.Result.JOINED, mCoalescer.request(false, "c"));
+        assertEquals(1, mStarted.size());
+        assertEquals("a", mStarted.get(0).getRequest());
+
+        assertNull(mCoalescer.onFetchDone(mStarted.get(0)));
+        assertFalse(mCoalescer.isFetching());
+        assertEquals(FetchCoalescer.Result.STARTED, mCoalescer.request(false, "d"));
+        assertEquals(2, mStarted.size());
+    }
+
+    @Test
+    public void upgradesFetchBeforeItDecides() {
+        mCoalescer.request(false, "a");
+        assertEquals(FetchCoalescer.Result.JOINED, mCoalescer.request(true, "b"));
+        FetchCoalescer.Fetch<String> fetch = mStarted.get(0);
+        assertTrue(fetch.decideForce());
+
+        assertNull(mCoalescer.onFetchDone(fetch));
+        assertEquals(1, mStarted.size());
+    }
+
+    @Test
+    public void queuesForcedFetchAfterDecision() {
+        mCoalescer.request(false, "a");
+        FetchCoalescer.Fetch<String> fetch = mStarted.get(0);
+        assertFalse(fetch.decideForce());
+        mCoalescer.request(true, "b");
+        // Several late forced requests still only queue one fetch, for the last of them
+        mCoalescer.request(true, "c");
+
+        assertEquals(FetchCoalescer.Result.STARTED, mCoalescer.onFetchDone(fetch));
+        assertEquals(2, mStarted.size());
+        FetchCoalescer.Fetch<String> queued = mStarted.get(1);
+        assertEquals("c", queued.getRequest());
+        assertTrue(queued.decideForce());
+        assertNull(mCoalescer.onFetchDone(queued));
+        assertFalse(mCoalescer.isFetching());
+    }
+
+    @Test
+    public void lateUnforcedRequestsDontQueue() {
+        mCoalescer.request(false, "a");
+        mStarted.get(0).decideForce();
+        mCoalescer.request(false, "b");
+        assertNull(mCoalescer.onFetchDone(mStarted.get(0)));
+        assertEquals(1, mStarted.size());
+    }
+
+    @Test
+    public void rejectedFetchLeavesNothingInFlight() {
+        mAccept = false;
+        assertEquals(FetchCoalescer.Result.REJECTED, mCoalescer.request(true, "a"));
+        assertFalse(mCoalescer.isFetching());
+        mAccept = true;
+        assertEquals(FetchCoalescer.Result.STARTED, mCoalescer.request(false, "b"));
+    }
+
+    @Test
+    public void ignoresFetchesNotInFlight() {
+        mCoalescer.request(false, "a");
+        FetchCoalescer.Fetch<String> first = mStarted.get(0);
+        mCoalescer.onFetchDone(first);
+        mCoalescer.request(false, "b");
+
+        assertNull(mCoalescer.onFetchDone(first));
+        assertTrue(mCoalescer.isFetching());
+    }
+}
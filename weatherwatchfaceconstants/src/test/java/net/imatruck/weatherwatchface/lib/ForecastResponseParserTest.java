@@ -0,0 +1,95 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ForecastResponseParserTest {
+
+    private static final WeatherSnapshot TORONTO = new WeatherSnapshot(WeatherCondition.CLOUDY, -6, -12,
+            1421326020L, 1421359500L, null, 43.65, -79.38);
+
+    @Test
+    public void readsFullResponse() throws IOException {
+        WeatherSnapshot snapshot = parseFixture("forecast_full.json");
+        assertEquals(TORONTO.getCondition(), snapshot.getCondition());
+        assertEquals(TORONTO.getTemperature(), snapshot.getTemperature());
+        assertEquals(TORONTO.getFeelsLike(), snapshot.getFeelsLike());
+        assertEquals(TORONTO.getSunrise(), snapshot.getSunrise());
+        assertEquals(TORONTO.getSunset(), snapshot.getSunset());
+        assertEquals(TORONTO.getLatitude(), snapshot.getLatitude(), 0);
+        assertEquals(TORONTO.getLongitude(), snapshot.getLongitude(), 0);
+
+        // The first hourly entry is the current hour, the timeline starts at the next one
+        WeatherTimeline timeline = snapshot.getTimeline();
+        assertEquals(1421337600L, timeline.getObservedAt());
+        assertEquals(WeatherTimeline.MAX_ENTRIES, timeline.size());
+        assertEquals(1421341200L, timeline.getTime(0));
+        assertEquals(1421380800L, timeline.getTime(WeatherTimeline.MAX_ENTRIES - 1));
+    }
+
+    @Test
+    public void readsResponseWithExcludedBlocks() throws IOException {
+        WeatherSnapshot snapshot = parseFixture("forecast_excluded.json");
+        assertEquals(TORONTO, snapshot);
+        assertNull(snapshot.getTimeline());
+    }
+
+    @Test
+    public void handlesEscapesAndNesting() throws IOException {
+        String json = "{\"alerts\":[{\"title\":\"A \\\"quoted\\\" \\u00e9 {not} [json]\"}],"
+                + "\"currently\":{\"summary\":\"x\\\\\",\"icon\":\"rain\",\"extra\":{\"a\":[1,2,{\"b\":null}]},"
+                + "\"temperature\":1.5e1,\"apparentTemperature\":-0.4},"
+                + "\"daily\":{\"data\":[{\"sunriseTime\":100,\"sunsetTime\":200},{\"sunriseTime\":300}]}}";
+        assertEquals(new WeatherSnapshot(WeatherCondition.RAIN, 15, 0, 100, 200),
+                ForecastResponseParser.parse(new StringReader(json)));
+    }
+
+    @Test
+    public void skipsHoursBeforeObservationAndIncompleteHours() throws IOException {
+        String json = "{\"currently\":{\"time\":1000,\"icon\":\"rain\",\"temperature\":4},"
+                + "\"hourly\":{\"data\":[{\"time\":0,\"icon\":\"rain\",\"temperature\":3},"
+                + "{\"time\":3600,\"temperature\":5},"
+                + "{\"time\":7200,\"icon\":\"snow\",\"temperature\":-1.6,\"apparentTemperature\":-6}]}}";
+        WeatherTimeline timeline = ForecastResponseParser.parse(new StringReader(json)).getTimeline();
+        assertEquals(1, timeline.size());
+        assertEquals(7200L, timeline.getTime(0));
+        assertEquals(WeatherCondition.SNOW, timeline.getCondition(0));
+        assertEquals(-2, timeline.getTemperature(0));
+        assertEquals(-6, timeline.getFeelsLike(0));
+    }
+
+    @Test
+    public void fallsBackWhenOptionalFieldsAreMissing() throws IOException {
+        String json = "{\"currently\":{\"icon\":\"hail\",\"temperature\":3,\"apparentTemperature\":null}}";
+        assertEquals(new WeatherSnapshot(WeatherCondition.UNKNOWN, 3, 3,
+                        WeatherSnapshot.SUN_TIME_UNKNOWN, WeatherSnapshot.SUN_TIME_UNKNOWN),
+                ForecastResponseParser.parse(new StringReader(json)));
+    }
+
+    @Test
+    public void returnsNullWithoutCurrentWeather() throws IOException {
+        assertNull(ForecastResponseParser.parse(new StringReader("{\"code\":400,\"error\":\"Bad\"}")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedResponse() throws IOException {
+        ForecastResponseParser.parse(new StringReader("{\"currently\":{\"icon\":\"rain\",\"temperature\":"));
+    }
+
+    private static WeatherSnapshot parseFixture(String name) throws IOException {
+        Reader reader = new InputStreamReader(
+                ForecastResponseParserTest.class.getResourceAsStream("/forecast/" + name), "UTF-8");
+        try {
+            return ForecastResponseParser.parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
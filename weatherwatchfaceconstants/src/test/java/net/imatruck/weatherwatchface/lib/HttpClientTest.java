@@ -0,0 +1,234 @@
+package net.imatruck.weatherwatchface.lib;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link HttpClient} against an in-process server that serves the recorded forecast,
+ * so bytes on the wire and connection reuse can be checked offline.
+ */
+public class HttpClientTest {
+
+    private static final String ETAG = "\"forecast-1\"";
+
+    private static final HttpClient.BodyParser<WeatherSnapshot> FORECAST_PARSER =
+            new HttpClient.BodyParser<WeatherSnapshot>() {
+                @Override
+                public WeatherSnapshot parse(Reader body) throws IOException {
+                    return ForecastResponseParser.parse(body);
+                }
+            };
+
+    private HttpServer mServer;
+    private byte[] mForecast;
+    private byte[] mGzippedForecast;
+    private final Set<InetSocketAddress> mClientAddresses = Collections.synchronizedSet(new HashSet<InetSocketAddress>());
+    private volatile long mDelayMillis;
+    private volatile int mStatus = 200;
+    private volatile String mIfNoneMatch;
+
+    @Before
+    public void startServer() throws IOException {
+        mForecast = readFixture("/forecast/forecast_full.json");
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+        gzip.write(mForecast);
+        gzip.close();
+        mGzippedForecast = gzipped.toByteArray();
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/forecast", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        mClientAddresses.add(exchange.getRemoteAddress());
+        mIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        try {
+            Thread.sleep(mDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (mStatus != 200) {
+            exchange.sendResponseHeaders(mStatus, -1);
+        } else if (ETAG.equals(mIfNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            byte[] body = gzip ? mGzippedForecast : mForecast;
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+        exchange.close();
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/forecast";
+    }
+
+    @Test
+    public void inflatesGzippedBody() throws IOException {
+        HttpClient client = new HttpClient();
+        WeatherSnapshot snapshot = client.get(url(), 5000, FORECAST_PARSER);
+
+        assertNotNull(snapshot);
+        assertEquals(ForecastResponseParser.parse(new StringReader(new String(mForecast, "UTF-8"))), snapshot);
+        assertEquals(mGzippedForecast.length, client.getBytesReceived());
+        assertTrue(client.getBytesReceived() < mForecast.length);
+    }
+
+    @Test
+    public void revalidatesWithETag() throws IOException {
+        HttpClient client = new HttpClient();
+        WeatherSnapshot first = client.get(url(), 5000, FORECAST_PARSER);
+        WeatherSnapshot second = client.get(url(), 5000, FORECAST_PARSER);
+
+        assertEquals(ETAG, mIfNoneMatch);
+        assertSame(first, second);
+        assertEquals(2, client.getRequestCount());
+        assertEquals(1, client.getNotModifiedCount());
+        assertEquals(mGzippedForecast.length, client.getBytesReceived());
+    }
+
+    @Test
+    public void revalidatesFromStoreAcrossClients() throws IOException {
+        final Map<String, HttpClient.Validated<WeatherSnapshot>> kept =
+                new HashMap<String, HttpClient.Validated<WeatherSnapshot>>();
+        HttpClient.ValidatorStore<WeatherSnapshot> store = new HttpClient.ValidatorStore<WeatherSnapshot>() {
+            @Override
+            public HttpClient.Validated<WeatherSnapshot> load(String key) {
+                return kept.get(key);
+            }
+
+            @Override
+            public void save(String key, HttpClient.Validated<WeatherSnapshot> validated) {
+                kept.put(key, validated);
+            }
+        };
+        WeatherSnapshot first = new HttpClient().get(url(), 5000, FORECAST_PARSER, store, "bucket");
+        assertEquals(ETAG, kept.get("bucket").getETag());
+
+        HttpClient second = new HttpClient();
+        assertSame(first, second.get(url(), 5000, FORECAST_PARSER, store, "bucket"));
+        assertEquals(ETAG, mIfNoneMatch);
+        assertEquals(1, second.getNotModifiedCount());
+    }
+
+    @Test
+    public void reusesConnection() throws IOException {
+        HttpClient client = new HttpClient();
+        for (int i = 0; i < 5; i++) {
+            client.get(url() + "?i=" + i, 5000, FORECAST_PARSER);
+        }
+        assertEquals(1, mClientAddresses.size());
+    }
+
+    @Test
+    public void failsOnErrorStatusAndRecovers() throws IOException {
+        HttpClient client = new HttpClient();
+        mStatus = 503;
+        try {
+            client.get(url(), 5000, FORECAST_PARSER);
+            fail("Error status should throw");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("503"));
+        }
+        mStatus = 200;
+        assertNotNull(client.get(url(), 5000, FORECAST_PARSER));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void failsAfterDeadline() throws IOException {
+        mDelayMillis = 1000;
+        new HttpClient().get(url(), 200, FORECAST_PARSER);
+    }
+
+    @Test
+    public void waitsForResponseWithTimeLeft() throws IOException {
+        // Loading validators eats most of the budget, the wait for the response gets the rest
+        HttpClient.ValidatorStore<WeatherSnapshot> slowStore = new HttpClient.ValidatorStore<WeatherSnapshot>() {
+            @Override
+            public HttpClient.Validated<WeatherSnapshot> load(String key) {
+                try {
+                    Thread.sleep(600);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+
+            @Override
+            public void save(String key, HttpClient.Validated<WeatherSnapshot> validated) {
+            }
+        };
+        mDelayMillis = 3000;
+        long start = System.nanoTime();
+        try {
+            new HttpClient().get(url(), 800, FORECAST_PARSER, slowStore, "bucket");
+            fail("Slow response should time out");
+        } catch (SocketTimeoutException expected) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Gave up after " + elapsedMillis + "ms", elapsedMillis < 1100);
+        }
+    }
+
+    private static byte[] readFixture(String resource) throws IOException {
+        InputStream stream = HttpClientTest.class.getResourceAsStream(resource);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IconAtlasLayoutTest {
+
+    @Test
+    public void namesIconsInColumnOrder() {
+        List<String> names = IconAtlasLayout.getIconNames();
+        assertEquals(IconAtlasLayout.COLUMNS, names.size());
+        for (WeatherCondition condition : WeatherCondition.values()) {
+            if (condition != WeatherCondition.UNKNOWN) {
+                assertEquals(condition.getForecastName().replace('-', '_'),
+                        names.get(IconAtlasLayout.getColumn(condition)));
+            }
+        }
+        assertEquals("clear_day", names.get(0));
+        assertEquals("fog", names.get(names.size() - 1));
+    }
+
+    @Test
+    public void drawsUnknownAsClearDay() {
+        assertEquals(IconAtlasLayout.getColumn(WeatherCondition.CLEAR_DAY),
+                IconAtlasLayout.getColumn(WeatherCondition.UNKNOWN));
+    }
+
+    @Test
+    public void listsFaceSizesSmallestFirst() {
+        int[] sizes = IconAtlasLayout.getFaceSizes();
+        for (int i = 1; i < sizes.length; i++) {
+            assertTrue(sizes[i - 1] < sizes[i]);
+        }
+        sizes[0] = 0;
+        assertEquals(280, IconAtlasLayout.getFaceSizes()[0]);
+        assertEquals("icon_atlas_280", IconAtlasLayout.getResourceName(280));
+    }
+}
@@ -0,0 +1,150 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RefreshSchedulerTest {
+
+    private static final long START = 1421337600000L;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long TWELVE_HOURS = 12 * 60 * 60 * 1000L;
+
+    @Test
+    public void pollsEveryIntervalWithoutTimeline() {
+        Simulation simulation = new Simulation(true, 0);
+        simulation.scheduler.setVisible(true);
+        simulation.run(DAY);
+        assertBetween(87, 107, simulation.scheduler.getRequestCount());
+    }
+
+    @Test
+    public void pollsLessWhileTimelineCoversAhead() {
+        Simulation simulation = new Simulation(true, TWELVE_HOURS);
+        simulation.scheduler.setVisible(true);
+        simulation.run(DAY);
+        assertBetween(11, 14, simulation.scheduler.getRequestCount());
+    }
+
+    @Test
+    public void pollsLessInAmbient() {
+        Simulation simulation = new Simulation(true, 0);
+        simulation.scheduler.setVisible(true);
+        simulation.scheduler.setAmbient(true);
+        simulation.run(DAY);
+        assertBetween(44, 54, simulation.scheduler.getRequestCount());
+    }
+
+    @Test
+    public void backsOffWhileMobileIsUnreachable() {
+        Simulation simulation = new Simulation(false, 0);
+        simulation.scheduler.setVisible(true);
+        simulation.run(DAY);
+        // Six quick attempts in the first half hour, then one every half hour
+        assertBetween(50, 58, simulation.scheduler.getRequestCount());
+        assertEquals(simulation.scheduler.getRequestCount(), simulation.forcedCount);
+    }
+
+    @Test
+    public void stopsBackingOffOnceWeatherArrives() {
+        Simulation simulation = new Simulation(false, 0);
+        simulation.scheduler.setVisible(true);
+        simulation.run(DAY / 2);
+        int failedRequests = simulation.scheduler.getRequestCount();
+
+        simulation.reachable = true;
+        simulation.run(DAY / 2);
+        assertBetween(failedRequests + 43, failedRequests + 54, simulation.scheduler.getRequestCount());
+    }
+
+    @Test
+    public void requestsNothingWhileHidden() {
+        Simulation simulation = new Simulation(true, 0);
+        simulation.run(DAY);
+        assertEquals(0, simulation.scheduler.getRequestCount());
+        assertEquals(-1, simulation.wakeUpAt);
+    }
+
+    @Test
+    public void requestsRightAwayWhenShownWithoutWeather() {
+        Simulation simulation = new Simulation(true, 0);
+        simulation.clock.now += DAY;
+        simulation.scheduler.setVisible(true);
+        assertEquals(simulation.clock.now, simulation.wakeUpAt);
+    }
+
+    @Test
+    public void restoredWeatherDelaysFirstRequest() {
+        Simulation simulation = new Simulation(true, 0);
+        simulation.scheduler.onWeatherReceived(START - 5 * 60 * 1000, 0);
+        simulation.scheduler.setVisible(true);
+        long delay = simulation.scheduler.getNextRefreshAt() - START;
+        assertBetween(RefreshScheduler.INTERVAL_MILLIS * 9 / 10 - 5 * 60 * 1000,
+                RefreshScheduler.INTERVAL_MILLIS * 11 / 10 - 5 * 60 * 1000, delay);
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue("expected " + min + " to " + max + " but was " + actual, actual >= min && actual <= max);
+    }
+
+    private static class FakeClock implements RefreshScheduler.Clock {
+        long now = START;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    /**
+     * Plays the mobile's part: answers every request right away when reachable, with
+     * weather covered for the given time.
+     */
+    private static class Simulation implements RefreshScheduler.Host {
+        final FakeClock clock = new FakeClock();
+        final RefreshScheduler scheduler = new RefreshScheduler(this, clock, new Random(42));
+        final long coverage;
+        boolean reachable;
+        long wakeUpAt = -1;
+        int forcedCount;
+
+        Simulation(boolean reachable, long coverage) {
+            this.reachable = reachable;
+            this.coverage = coverage;
+        }
+
+        void run(long duration) {
+            long end = clock.now + duration;
+            while (wakeUpAt != -1 && wakeUpAt < end) {
+                clock.now = Math.max(clock.now, wakeUpAt);
+                wakeUpAt = -1;
+                scheduler.onWakeUp();
+            }
+            clock.now = end;
+        }
+
+        @Override
+        public void requestRefresh(boolean force) {
+            if (force) {
+                forcedCount++;
+            }
+            scheduler.onRequestDone(reachable);
+            if (reachable) {
+                scheduler.onWeatherReceived(clock.now, coverage > 0 ? clock.now + coverage : 0);
+            }
+        }
+
+        @Override
+        public void scheduleWakeUp(long delayMillis) {
+            wakeUpAt = clock.now + delayMillis;
+        }
+
+        @Override
+        public void cancelWakeUp() {
+            wakeUpAt = -1;
+        }
+    }
+}
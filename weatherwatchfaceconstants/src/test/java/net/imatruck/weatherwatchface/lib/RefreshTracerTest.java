@@ -0,0 +1,88 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RefreshTracerTest {
+
+    private static final String[] MOBILE_STAGES = {"queue", "connect", "locate", "fetch", "encode"};
+
+    @Test
+    public void splitsEndToEndIntoStagesAndDelivery() {
+        RefreshTracer tracer = new RefreshTracer(new Random(1));
+        long id = tracer.start(1000);
+        tracer.onSent(id, 1100, stages(20, 80));
+        assertTrue(tracer.onAnswered(id, 2500, MOBILE_STAGES, new long[]{5, 0, 10, 900, 1}));
+
+        assertEquals(1, tracer.getAnswered());
+        assertWithin(1500, tracer.get(RefreshTracer.END_TO_END).getValueAtPercentile(50));
+        assertWithin(80, tracer.get(RefreshTracer.WATCH_PREFIX + "send").getValueAtPercentile(50));
+        assertWithin(900, tracer.get(RefreshTracer.MOBILE_PREFIX + "fetch").getValueAtPercentile(50));
+        // 1400ms between sending and the answer, 916ms of which on the mobile
+        assertWithin(484, tracer.get(RefreshTracer.DELIVERY).getValueAtPercentile(50));
+    }
+
+    @Test
+    public void answersEachTraceOnce() {
+        RefreshTracer tracer = new RefreshTracer(new Random(1));
+        long id = tracer.start(0);
+        assertFalse(tracer.onAnswered(RefreshTracer.NO_TRACE, 10, null, null));
+        assertFalse(tracer.onAnswered(id + 1, 10, null, null));
+        assertTrue(tracer.onAnswered(id, 10, null, null));
+        assertFalse(tracer.onAnswered(id, 20, null, null));
+        assertEquals(1, tracer.get(RefreshTracer.END_TO_END).getCount());
+        // Answered before the request was marked sent
+        assertEquals(null, tracer.get(RefreshTracer.DELIVERY));
+    }
+
+    @Test
+    public void countsUnansweredRequests() {
+        RefreshTracer tracer = new RefreshTracer(new Random(1));
+        long first = tracer.start(0);
+        for (int i = 1; i <= RefreshTracer.MAX_PENDING + 2; i++) {
+            tracer.start(i);
+        }
+        assertEquals(3, tracer.getUnanswered());
+        assertFalse(tracer.onAnswered(first, 100, null, null));
+    }
+
+    @Test
+    public void carriesTraceIdInRequests() {
+        assertEquals(-42L, RefreshTracer.decodeTraceId(RefreshTracer.encodeTraceId(-42L)));
+        // Older watches send an empty request
+        assertEquals(RefreshTracer.NO_TRACE, RefreshTracer.decodeTraceId(new byte[0]));
+        assertEquals(RefreshTracer.NO_TRACE, RefreshTracer.decodeTraceId(null));
+    }
+
+    @Test
+    public void reportsPercentiles() {
+        RefreshTracer tracer = new RefreshTracer(new Random(1));
+        for (int i = 1; i <= 100; i++) {
+            long id = tracer.start(0);
+            tracer.onAnswered(id, i * 100, null, null);
+        }
+        String report = tracer.report();
+        assertTrue(report, report.startsWith("refreshes: 100 answered, 0 unanswered\nend-to-end: 100, p50 "));
+        assertWithin(5000, tracer.get(RefreshTracer.END_TO_END).getValueAtPercentile(50));
+        assertWithin(9900, tracer.get(RefreshTracer.END_TO_END).getValueAtPercentile(99));
+    }
+
+    private static Map<String, Long> stages(long connect, long send) {
+        Map<String, Long> stages = new LinkedHashMap<String, Long>();
+        stages.put("connect", connect);
+        stages.put("send", send);
+        return stages;
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 12.5% of " + expected,
+                actual >= expected && actual <= expected * 1.125);
+    }
+}
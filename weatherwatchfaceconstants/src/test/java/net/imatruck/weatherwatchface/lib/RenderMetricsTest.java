@@ -0,0 +1,79 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RenderMetricsTest {
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        for (long micros = 0; micros < 100000; micros++) {
+            int index = LatencyHistogram.indexOf(micros);
+            assertTrue(micros <= LatencyHistogram.highestValueAt(index));
+            if (index > 0) {
+                assertTrue(micros > LatencyHistogram.highestValueAt(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (long micros = 1; micros <= 10000; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertWithin(5000, histogram.getValueAtPercentile(50));
+        assertWithin(9900, histogram.getValueAtPercentile(99));
+        assertWithin(10000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void clampsLongDurations() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void keepsAmbientAndInteractiveApart() {
+        RenderMetrics metrics = new RenderMetrics();
+        metrics.recordFrame(TimeUnit.MILLISECONDS.toNanos(2), false);
+        metrics.recordFrame(TimeUnit.MILLISECONDS.toNanos(8), true);
+        metrics.onIconDecoded();
+        metrics.onRefreshRequested();
+        metrics.onRefreshRequested();
+
+        assertEquals(1, metrics.getInteractiveFrames().getCount());
+        assertEquals(1, metrics.getAmbientFrames().getCount());
+        assertArrayEquals(new long[]{2000, -8000}, metrics.getRecentFrames());
+        String report = metrics.report();
+        assertTrue(report, report.contains("icon decodes: 1, refresh requests: 2"));
+        assertTrue(report, report.contains("recent: 2.0ms 8.0msa"));
+    }
+
+    @Test
+    public void recentFramesWrapAround() {
+        RenderMetrics metrics = new RenderMetrics();
+        for (int i = 0; i < RenderMetrics.RECENT_FRAMES + 3; i++) {
+            metrics.recordFrame(TimeUnit.MICROSECONDS.toNanos(i), false);
+        }
+        long[] recent = metrics.getRecentFrames();
+        assertEquals(RenderMetrics.RECENT_FRAMES, recent.length);
+        assertEquals(3, recent[0]);
+        assertEquals(RenderMetrics.RECENT_FRAMES + 2, recent[recent.length - 1]);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 12.5% of " + expected,
+                actual >= expected && actual <= expected * 1.125);
+    }
+}
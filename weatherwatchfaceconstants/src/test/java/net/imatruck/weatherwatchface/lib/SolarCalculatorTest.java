@@ -0,0 +1,108 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SolarCalculatorTest {
+
+    private static final long TOLERANCE_SECONDS = 60;
+    private static final long HOUR = 3600;
+    private static final long DAY = 24 * HOUR;
+    // 2015-01-01T00:00:00Z
+    private static final long YEAR_START = 1420070400L;
+
+    @Test
+    public void matchesReferenceTable() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                SolarCalculatorTest.class.getResourceAsStream("/sun/sun_times.csv"), "UTF-8"));
+        int rows = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                double latitude = Double.parseDouble(fields[1]);
+                double longitude = Double.parseDouble(fields[2]);
+                long noon = Long.parseLong(fields[3]);
+                assertSunTime(line, Long.parseLong(fields[4]), SolarCalculator.getSunrise(latitude, longitude, noon));
+                assertSunTime(line, Long.parseLong(fields[5]), SolarCalculator.getSunset(latitude, longitude, noon));
+                rows++;
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(144, rows);
+    }
+
+    @Test
+    public void nightChangesExactlyAtTransitions() {
+        double[][] places = {{43.65, -79.38}, {-33.87, 151.21}, {1.35, 103.82}, {64.14, -21.94}};
+        for (double[] place : places) {
+            long time = YEAR_START;
+            int transitions = 0;
+            while (time < YEAR_START + 365 * DAY) {
+                long next = SolarCalculator.getNextTransition(place[0], place[1], time);
+                assertTrue(next > time && next - time < DAY);
+                boolean night = SolarCalculator.isNight(place[0], place[1], time);
+                for (long t = time; t < next; t += HOUR / 4) {
+                    assertEquals(night, SolarCalculator.isNight(place[0], place[1], t));
+                }
+                assertEquals(night, SolarCalculator.isNight(place[0], place[1], next - 1));
+                assertTrue(night != SolarCalculator.isNight(place[0], place[1], next));
+                time = next;
+                transitions++;
+            }
+            assertTrue(transitions >= 729 && transitions <= 731);
+        }
+    }
+
+    @Test
+    public void followsPolarNightAndMidnightSun() {
+        // Tromsø, no sunrise from late November to mid January
+        long december = YEAR_START + 350 * DAY;
+        for (long t = december; t < december + DAY; t += HOUR) {
+            assertTrue(SolarCalculator.isNight(69.65, 18.96, t));
+        }
+        assertEquals(SolarCalculator.NONE, SolarCalculator.getNextTransition(69.65, 18.96, december));
+
+        long june = YEAR_START + 171 * DAY;
+        for (long t = june; t < june + DAY; t += HOUR) {
+            assertFalse(SolarCalculator.isNight(69.65, 18.96, t));
+        }
+        assertEquals(SolarCalculator.NONE, SolarCalculator.getNextTransition(69.65, 18.96, june));
+    }
+
+    @Test
+    public void snapshotFollowsSunAfterItsDay() {
+        // Toronto, with the sun times of January 15th only
+        WeatherSnapshot withoutLocation = new WeatherSnapshot(WeatherCondition.CLOUDY, -6, -12,
+                1421326020L, 1421359500L);
+        WeatherSnapshot withLocation = new WeatherSnapshot(WeatherCondition.CLOUDY, -6, -12,
+                1421326020L, 1421359500L, null, 43.65, -79.38);
+        long nextNoon = 1421342251L + DAY;
+
+        assertTrue(withoutLocation.isNight(nextNoon));
+        assertEquals(WeatherSnapshot.SUN_TIME_UNKNOWN, withoutLocation.getNextDayNightChange(nextNoon));
+        assertFalse(withLocation.isNight(nextNoon));
+        long sunset = withLocation.getNextDayNightChange(nextNoon);
+        assertEquals(SolarCalculator.getSunset(43.65, -79.38, nextNoon), sunset);
+        assertTrue(withLocation.isNight(sunset));
+    }
+
+    private static void assertSunTime(String row, long expected, long actual) {
+        if (expected == SolarCalculator.NONE || actual == SolarCalculator.NONE) {
+            assertEquals(row, expected, actual);
+        } else {
+            assertTrue(row + ": off by " + (actual - expected) + "s", Math.abs(actual - expected) <= TOLERANCE_SECONDS);
+        }
+    }
+}
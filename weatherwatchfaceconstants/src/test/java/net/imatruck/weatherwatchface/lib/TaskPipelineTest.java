@@ -0,0 +1,150 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TaskPipelineTest {
+
+    private final TaskPipeline mPipeline = new TaskPipeline("test", 1);
+
+    @After
+    public void shutdown() {
+        mPipeline.shutdown();
+    }
+
+    @Test
+    public void timesEachStage() throws InterruptedException {
+        RecordingJob job = new RecordingJob() {
+            @Override
+            protected void run(TaskPipeline.Run run) throws Exception {
+                run.stage("connect");
+                run.stage("fetch");
+                Thread.sleep(20);
+                run.stage("send");
+            }
+        };
+        TaskPipeline.Run run = mPipeline.submit(job, 5000);
+        job.await();
+
+        assertEquals(TaskPipeline.Outcome.COMPLETED, run.getOutcome());
+        assertEquals(Arrays.asList("connect", "fetch", "send"), new ArrayList<String>(run.getStageMillis().keySet()));
+        assertTrue(run.getStageMillis().get("fetch") >= 20);
+        assertTrue(run.getTimings().startsWith("connect "));
+    }
+
+    @Test
+    public void stopsAtNextStageOnceCancelled() throws InterruptedException {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final List<String> reached = new ArrayList<String>();
+        RecordingJob job = new RecordingJob() {
+            @Override
+            protected void run(TaskPipeline.Run run) throws Exception {
+                run.stage("connect");
+                reached.add("connect");
+                connected.countDown();
+                cancelled.await();
+                run.stage("fetch");
+                reached.add("fetch");
+            }
+        };
+        TaskPipeline.Run run = mPipeline.submit(job, 5000);
+        assertTrue(connected.await(5, TimeUnit.SECONDS));
+        run.cancel();
+        cancelled.countDown();
+        job.await();
+
+        assertEquals(TaskPipeline.Outcome.CANCELLED, run.getOutcome());
+        assertEquals(Arrays.asList("connect"), reached);
+        assertTrue(run.getStageMillis().containsKey("connect"));
+    }
+
+    @Test
+    public void timesOutWhenDeadlinePasses() throws InterruptedException {
+        RecordingJob job = new RecordingJob() {
+            @Override
+            protected void run(TaskPipeline.Run run) throws Exception {
+                run.stage("fetch");
+                Thread.sleep(run.remainingMillis() + 5);
+                run.stage("send");
+            }
+        };
+        TaskPipeline.Run run = mPipeline.submit(job, 20);
+        job.await();
+
+        assertEquals(TaskPipeline.Outcome.TIMED_OUT, run.getOutcome());
+        assertNotNull(run.getFailure());
+    }
+
+    @Test
+    public void reportsFailures() throws InterruptedException {
+        RecordingJob job = new RecordingJob() {
+            @Override
+            protected void run(TaskPipeline.Run run) throws Exception {
+                throw new IllegalStateException("boom");
+            }
+        };
+        TaskPipeline.Run run = mPipeline.submit(job, 5000);
+        job.await();
+
+        assertEquals(TaskPipeline.Outcome.FAILED, run.getOutcome());
+        assertEquals("boom", run.getFailure().getMessage());
+    }
+
+    @Test
+    public void rejectsJobsBeyondQueueAndFinishesCancelledOnes() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingJob blocking = new RecordingJob() {
+            @Override
+            protected void run(TaskPipeline.Run run) throws Exception {
+                started.countDown();
+                release.await();
+            }
+        };
+        RecordingJob waiting = new RecordingJob() {
+            @Override
+            protected void run(TaskPipeline.Run run) {
+                throw new AssertionError("Cancelled job ran");
+            }
+        };
+        assertNotNull(mPipeline.submit(blocking, 5000));
+        // The blocking job may not have left the queue yet, wait until it runs
+        assertTrue(blocking.started.await(5, TimeUnit.SECONDS));
+        TaskPipeline.Run waitingRun = mPipeline.submit(waiting, 5000);
+        assertNotNull(waitingRun);
+        assertNull(mPipeline.submit(new RecordingJob(), 5000));
+
+        waitingRun.cancel();
+        release.countDown();
+        waiting.await();
+        assertEquals(TaskPipeline.Outcome.CANCELLED, waitingRun.getOutcome());
+    }
+
+    private static class RecordingJob extends TaskPipeline.Job {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        protected void run(TaskPipeline.Run run) throws Exception {}
+
+        @Override
+        protected void onFinished(TaskPipeline.Run run) {
+            finished.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
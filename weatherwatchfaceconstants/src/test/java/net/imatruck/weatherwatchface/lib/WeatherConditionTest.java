@@ -0,0 +1,51 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherConditionTest {
+
+    @Test
+    public void readsForecastNames() {
+        assertEquals(WeatherCondition.PARTLY_CLOUDY_NIGHT, WeatherCondition.fromForecastName("partly-cloudy-night"));
+        for (WeatherCondition condition : WeatherCondition.values()) {
+            if (condition.getForecastName() != null) {
+                assertEquals(condition, WeatherCondition.fromForecastName(condition.getForecastName()));
+            }
+        }
+    }
+
+    @Test
+    public void fallsBackToUnknown() {
+        assertEquals(WeatherCondition.UNKNOWN, WeatherCondition.fromForecastName(null));
+        assertEquals(WeatherCondition.UNKNOWN, WeatherCondition.fromForecastName(""));
+        assertEquals(WeatherCondition.UNKNOWN, WeatherCondition.fromForecastName("tornado"));
+        assertEquals(WeatherCondition.UNKNOWN, WeatherCondition.fromForecastName("Rain"));
+        assertEquals(WeatherCondition.UNKNOWN, WeatherCondition.fromWireCode(-1));
+        assertEquals(WeatherCondition.UNKNOWN, WeatherCondition.fromWireCode(99));
+        assertEquals(WeatherCondition.UNKNOWN, WeatherCondition.fromWireCode(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void wireCodesAreUniqueAndRoundTrip() {
+        Set<Integer> wireCodes = new HashSet<Integer>();
+        for (WeatherCondition condition : WeatherCondition.values()) {
+            assertTrue("Duplicate wire code " + condition.getWireCode(), wireCodes.add(condition.getWireCode()));
+            assertEquals(condition, WeatherCondition.fromWireCode(condition.getWireCode()));
+        }
+    }
+
+    @Test
+    public void keepsPublishedWireCodes() {
+        // Sent to watches running older versions, these must never change
+        assertEquals(0, WeatherCondition.UNKNOWN.getWireCode());
+        assertEquals(1, WeatherCondition.CLEAR_DAY.getWireCode());
+        assertEquals(6, WeatherCondition.RAIN.getWireCode());
+        assertEquals(10, WeatherCondition.FOG.getWireCode());
+    }
+}
@@ -0,0 +1,140 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class WeatherSnapshotCodecTest {
+
+    private static final int FUZZ_ITERATIONS = 100000;
+
+    @Test
+    public void roundTripsEveryCondition() {
+        for (WeatherCondition condition : WeatherCondition.values()) {
+            WeatherSnapshot snapshot = new WeatherSnapshot(condition, -12, -20, 1420113600L, 1420146000L);
+            assertEquals(snapshot, WeatherSnapshotCodec.decode(WeatherSnapshotCodec.encode(snapshot)));
+        }
+    }
+
+    @Test
+    public void roundTripsExtremeValues() {
+        WeatherSnapshot[] snapshots = {
+                new WeatherSnapshot(WeatherCondition.CLEAR_DAY, Short.MIN_VALUE, Short.MAX_VALUE,
+                        Integer.MIN_VALUE, Integer.MAX_VALUE),
+                new WeatherSnapshot(WeatherCondition.FOG, 0, 0,
+                        WeatherSnapshot.SUN_TIME_UNKNOWN, WeatherSnapshot.SUN_TIME_UNKNOWN),
+        };
+        for (WeatherSnapshot snapshot : snapshots) {
+            assertEquals(snapshot, WeatherSnapshotCodec.decode(WeatherSnapshotCodec.encode(snapshot)));
+        }
+    }
+
+    @Test
+    public void encodesToFixedSize() {
+        WeatherSnapshot snapshot = new WeatherSnapshot(WeatherCondition.RAIN, 8, 5, 1420113600L, 1420146000L);
+        assertEquals(WeatherSnapshotCodec.CORE_LENGTH, WeatherSnapshotCodec.encode(snapshot).length);
+    }
+
+    @Test
+    public void roundTripsTimeline() {
+        WeatherTimeline timeline = new WeatherTimeline(1420113600L,
+                new long[]{1420117200L, 1420120800L},
+                new WeatherCondition[]{WeatherCondition.CLOUDY, WeatherCondition.RAIN},
+                new int[]{-2, 1}, new int[]{-7, -3});
+        WeatherSnapshot snapshot = new WeatherSnapshot(WeatherCondition.SNOW, -3, -9, 1420113600L, 1420146000L,
+                timeline);
+        assertEquals(snapshot, WeatherSnapshotCodec.decode(WeatherSnapshotCodec.encode(snapshot)));
+    }
+
+    @Test
+    public void roundTripsLocation() {
+        WeatherSnapshot[] snapshots = {
+                new WeatherSnapshot(WeatherCondition.CLEAR_NIGHT, 2, -1, 1420113600L, 1420146000L,
+                        null, 69.6496, 18.9560),
+                new WeatherSnapshot(WeatherCondition.CLEAR_DAY, 30, 31, 1420113600L, 1420146000L,
+                        null, -90, -180),
+        };
+        for (WeatherSnapshot snapshot : snapshots) {
+            WeatherSnapshot decoded = WeatherSnapshotCodec.decode(WeatherSnapshotCodec.encode(snapshot));
+            assertEquals(snapshot, decoded);
+            assertEquals(snapshot.getLatitude(), decoded.getLatitude(), 0);
+        }
+        assertEquals(69.65, snapshots[0].getLatitude(), 0);
+    }
+
+    @Test
+    public void unknownWireCodeFallsBackToUnknown() {
+        byte[] data = WeatherSnapshotCodec.encode(
+                new WeatherSnapshot(WeatherCondition.RAIN, 8, 5, 1420113600L, 1420146000L));
+        ByteBuffer.wrap(data).putInt(1, 9999);
+        assertEquals(WeatherCondition.UNKNOWN, WeatherSnapshotCodec.decode(data).getCondition());
+    }
+
+    @Test
+    public void skipsUnknownSections() {
+        WeatherSnapshot snapshot = new WeatherSnapshot(WeatherCondition.SNOW, -3, -9, 1420113600L, 1420146000L);
+        byte[] core = WeatherSnapshotCodec.encode(snapshot);
+        ByteBuffer buffer = ByteBuffer.allocate(core.length + 3 + 4 + 3);
+        buffer.put(core);
+        buffer.put((byte) 0x7F).putShort((short) 4).putInt(42);
+        buffer.put((byte) 0x7E).putShort((short) 0);
+        assertEquals(snapshot, WeatherSnapshotCodec.decode(buffer.array()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedVersion() {
+        byte[] data = WeatherSnapshotCodec.encode(
+                new WeatherSnapshot(WeatherCondition.RAIN, 8, 5, 1420113600L, 1420146000L));
+        data[0] = (byte) (WeatherSnapshotCodec.VERSION + 1);
+        WeatherSnapshotCodec.decode(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedData() {
+        byte[] data = WeatherSnapshotCodec.encode(
+                new WeatherSnapshot(WeatherCondition.RAIN, 8, 5, 1420113600L, 1420146000L));
+        WeatherSnapshotCodec.decode(Arrays.copyOf(data, data.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOutOfRangeTemperature() {
+        WeatherSnapshotCodec.encode(new WeatherSnapshot(WeatherCondition.RAIN, 40000, 5, 0, 0));
+    }
+
+    @Test
+    public void fuzzedInputEitherDecodesOrIsRejected() {
+        Random random = new Random(0x5EED);
+        byte[] valid = WeatherSnapshotCodec.encode(
+                new WeatherSnapshot(WeatherCondition.PARTLY_CLOUDY_NIGHT, 15, 14, 1420113600L, 1420146000L));
+
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+            byte[] data;
+            if (random.nextBoolean()) {
+                data = new byte[random.nextInt(64)];
+                random.nextBytes(data);
+                if (data.length > 0 && random.nextBoolean()) {
+                    data[0] = WeatherSnapshotCodec.VERSION;
+                }
+            } else {
+                data = Arrays.copyOf(valid, valid.length + random.nextInt(16));
+                for (int flips = random.nextInt(4); flips >= 0; flips--) {
+                    data[random.nextInt(data.length)] = (byte) random.nextInt();
+                }
+            }
+
+            try {
+                WeatherSnapshot snapshot = WeatherSnapshotCodec.decode(data);
+                assertEquals(snapshot, WeatherSnapshotCodec.decode(WeatherSnapshotCodec.encode(snapshot)));
+            } catch (IllegalArgumentException expected) {
+                // Rejected cleanly
+            } catch (RuntimeException e) {
+                fail("Unexpected " + e + " for " + Arrays.toString(data));
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.imatruck.weatherwatchface.lib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherTimelineTest {
+
+    private static final long OBSERVED_AT = 1420113600L;
+
+    private static final WeatherSnapshot SNAPSHOT = new WeatherSnapshot(WeatherCondition.CLOUDY, 0, -4,
+            1420113000L, 1420146000L,
+            new WeatherTimeline(OBSERVED_AT,
+                    new long[]{OBSERVED_AT + 3600, OBSERVED_AT + 7200},
+                    new WeatherCondition[]{WeatherCondition.RAIN, WeatherCondition.SNOW},
+                    new int[]{4, -2}, new int[]{0, -8}));
+
+    @Test
+    public void returnsObservationBeforeItMoves() {
+        assertSame(SNAPSHOT, SNAPSHOT.at(OBSERVED_AT - 60));
+        assertSame(SNAPSHOT, SNAPSHOT.at(OBSERVED_AT));
+    }
+
+    @Test
+    public void interpolatesTowardsFirstEntry() {
+        WeatherSnapshot halfway = SNAPSHOT.at(OBSERVED_AT + 1800);
+        assertEquals(WeatherCondition.CLOUDY, halfway.getCondition());
+        assertEquals(2, halfway.getTemperature());
+        assertEquals(-2, halfway.getFeelsLike());
+        assertEquals(SNAPSHOT.getSunrise(), halfway.getSunrise());
+    }
+
+    @Test
+    public void usesConditionOfLastEntryReached() {
+        WeatherSnapshot snapshot = SNAPSHOT.at(OBSERVED_AT + 3600 + 900);
+        assertEquals(WeatherCondition.RAIN, snapshot.getCondition());
+        assertEquals(3, snapshot.getTemperature());
+        assertEquals(-2, snapshot.getFeelsLike());
+    }
+
+    @Test
+    public void holdsLastEntry() {
+        WeatherSnapshot snapshot = SNAPSHOT.at(OBSERVED_AT + 5 * 3600);
+        assertEquals(WeatherCondition.SNOW, snapshot.getCondition());
+        assertEquals(-2, snapshot.getTemperature());
+        assertEquals(-8, snapshot.getFeelsLike());
+    }
+
+    @Test
+    public void coversUntilAnHourAfterLastEntry() {
+        assertTrue(SNAPSHOT.isCoveredUntil(OBSERVED_AT + 3 * 3600 - 1));
+        assertFalse(SNAPSHOT.isCoveredUntil(OBSERVED_AT + 3 * 3600));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTimesBeforeObservation() {
+        new WeatherTimeline(OBSERVED_AT, new long[]{OBSERVED_AT},
+                new WeatherCondition[]{WeatherCondition.RAIN}, new int[]{1}, new int[]{1});
+    }
+}